@@ -0,0 +1,357 @@
+package hello.jdbc.connection;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.ConnectionProxy;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ *  PreparedStatement 캐시
+ *
+ *  커넥션 풀(HikariDataSource 등)을 감싸서 사용한다.
+ *  conn.prepareStatement(sql)을 하면 물리 커넥션 + sql 단위로 캐시된 PreparedStatement를 돌려주고,
+ *  close()를 하면 실제로 닫지 않고 캐시에 돌려놓는다.
+ *
+ *  캐시는 풀이 주는 프록시 커넥션이 아니라 물리 커넥션(unwrap) 기준이므로
+ *  같은 트랜잭션 안에서는 물론이고, 커넥션을 풀에 반납했다가 다시 꺼내도 재사용된다.
+ *  그래서 캐시된 Statement는 물리 커넥션에서 직접 만든다. (Hikari가 반납 시 닫지 않도록)
+ *
+ *  물리 커넥션의 Statement는 Hikari의 프록시를 거치지 않으므로, Hikari는 커밋되지 않은 작업이 있는지 모른다.
+ *  그래서 auto commit이 꺼진 채로 close() 하면 여기서 롤백한다. (커밋하지 않은 작업이 다음 사용자에게 넘어가지 않도록)
+ *  트랜잭션 매니저는 커밋/롤백 후 auto commit을 되돌리고 반납하므로 보통은 롤백이 일어나지 않는다.
+ *
+ *  Statement 설정(queryTimeout, fetchSize, maxRows 등)은 사용하는 쪽마다 다르다. (DataSourceUtils.applyTimeout, streamAll)
+ *  바뀐 설정이 다음 사용자에게 넘어가지 않도록, 캐시에 돌려놓을 때 처음 만들었을 때의 드라이버 기본값으로 되돌린다.
+ *
+ *  리포지토리 코드는 바꿀 필요가 없다. 트랜잭션 매니저와 리포지토리에 같은 StatementCachingDataSource를 넘기면 된다.
+ */
+@Slf4j
+public class StatementCachingDataSource extends DelegatingDataSource {
+
+    public static final int DEFAULT_CACHE_SIZE = 64;
+
+    private final int cacheSize;
+    private final Map<Connection, StatementCache> caches = new ConcurrentHashMap<>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    public StatementCachingDataSource(DataSource targetDataSource) {
+        this(targetDataSource, DEFAULT_CACHE_SIZE);
+    }
+
+    public StatementCachingDataSource(DataSource targetDataSource, int cacheSize) {
+        super(targetDataSource);
+        if (cacheSize <= 0) {
+            throw new IllegalArgumentException("cacheSize must be positive. cacheSize = " + cacheSize);
+        }
+        this.cacheSize = cacheSize;
+    }
+
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrap(obtainTargetDataSource().getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrap(obtainTargetDataSource().getConnection(username, password));
+    }
+
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    public double getHitRatio() {
+        long hits = hitCount.get();
+        long total = hits + missCount.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+
+    private Connection wrap(Connection target) throws SQLException {
+        purgeClosed();
+
+        Connection physical = target.unwrap(Connection.class);
+        StatementCache cache = caches.computeIfAbsent(physical, StatementCache::new);
+
+        return (Connection) Proxy.newProxyInstance(
+                ConnectionProxy.class.getClassLoader(),
+                new Class<?>[]{ConnectionProxy.class},
+                new CachingConnectionHandler(target, cache));
+    }
+
+    /**
+     * 풀이 물리 커넥션을 닫으면(maxLifetime 등) 해당 캐시도 버린다.
+     */
+    private void purgeClosed() {
+        for (Iterator<Map.Entry<Connection, StatementCache>> it = caches.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Connection, StatementCache> entry = it.next();
+            try {
+                if (entry.getKey().isClosed()) {
+                    it.remove();
+                }
+            } catch (SQLException e) {
+                it.remove();
+            }
+        }
+    }
+
+
+    private class CachingConnectionHandler implements InvocationHandler {
+
+        private final Connection target;
+        private final StatementCache cache;
+
+        CachingConnectionHandler(Connection target, StatementCache cache) {
+            this.target = target;
+            this.cache = cache;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "StatementCaching[" + target + "]";
+                case "getTargetConnection":
+                    return target;
+                case "close":
+                    rollbackIfInTransaction();
+                    break;
+                case "prepareStatement":
+                    if (args.length == 1) {
+                        return cache.prepare((Connection) proxy, (String) args[0]);
+                    }
+                    break;
+                default:
+                    break;
+            }
+
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+
+        private void rollbackIfInTransaction() {
+            try {
+                if (!target.isClosed() && !target.getAutoCommit()) {
+                    log.info("connection closed with auto commit off, rolling back");
+                    target.rollback();
+                }
+            } catch (SQLException e) {
+                log.info("rollback on close error ", e);
+            }
+        }
+    }
+
+
+    /**
+     * 물리 커넥션 하나의 LRU 캐시
+     * 사용 중인 Statement는 캐시에서 빼두었다가 close() 할 때 다시 넣는다.
+     * 같은 sql을 동시에 두 번 쓰면 두 번째는 캐시되지 않은 새 Statement를 만든다.
+     *
+     * 밀려난 Statement를 닫는 JDBC 호출이 락 안에서 일어나므로 synchronized 대신 ReentrantLock을 쓴다.
+     * (synchronized 안에서 블로킹되면 가상 스레드가 캐리어 스레드를 붙잡는다.)
+     */
+    private class StatementCache {
+
+        private final Connection physical;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<String, PreparedStatement> statements;
+        // 이 커넥션에서 처음 만든 Statement의 설정 (드라이버 기본값)
+        private volatile StatementSettings defaults;
+
+        StatementCache(Connection physical) {
+            this.physical = physical;
+            this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                    if (size() > cacheSize) {
+                        evictionCount.incrementAndGet();
+                        JdbcUtils.closeStatement(eldest.getValue());
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+
+        PreparedStatement prepare(Connection connectionProxy, String sql) throws SQLException {
+            PreparedStatement statement;
+            lock.lock();
+            try {
+                statement = statements.remove(sql);
+            } finally {
+                lock.unlock();
+            }
+
+            if (statement != null) {
+                hitCount.incrementAndGet();
+            } else {
+                missCount.incrementAndGet();
+                statement = physical.prepareStatement(sql);
+                if (defaults == null) {
+                    defaults = StatementSettings.of(statement);
+                }
+            }
+
+            return (PreparedStatement) Proxy.newProxyInstance(
+                    PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class},
+                    new CachedStatementHandler(this, connectionProxy, sql, statement));
+        }
+
+        void release(String sql, PreparedStatement statement, boolean settingsChanged) {
+            try {
+                statement.clearParameters();
+                statement.clearBatch();
+                if (settingsChanged) {
+                    defaults.applyTo(statement);
+                }
+            } catch (SQLException e) {
+                log.info("cached statement reset error ", e);
+                JdbcUtils.closeStatement(statement);
+                return;
+            }
+
+            PreparedStatement previous;
+            lock.lock();
+            try {
+                previous = statements.put(sql, statement);
+            } finally {
+                lock.unlock();
+            }
+            if (previous != null && previous != statement) {
+                JdbcUtils.closeStatement(previous);
+            }
+        }
+    }
+
+
+    /**
+     * 사용하는 쪽이 바꿀 수 있는 Statement 설정
+     */
+    private static class StatementSettings {
+
+        private static final Set<String> SETTERS = Set.of(
+                "setQueryTimeout", "setFetchSize", "setFetchDirection", "setMaxRows", "setLargeMaxRows", "setMaxFieldSize");
+
+        private final int queryTimeout;
+        private final int fetchSize;
+        private final int fetchDirection;
+        private final int maxRows;
+        private final int maxFieldSize;
+
+        private StatementSettings(int queryTimeout, int fetchSize, int fetchDirection, int maxRows, int maxFieldSize) {
+            this.queryTimeout = queryTimeout;
+            this.fetchSize = fetchSize;
+            this.fetchDirection = fetchDirection;
+            this.maxRows = maxRows;
+            this.maxFieldSize = maxFieldSize;
+        }
+
+        static StatementSettings of(PreparedStatement statement) throws SQLException {
+            return new StatementSettings(statement.getQueryTimeout(), statement.getFetchSize(),
+                    statement.getFetchDirection(), statement.getMaxRows(), statement.getMaxFieldSize());
+        }
+
+        static boolean isSetter(String methodName) {
+            return SETTERS.contains(methodName);
+        }
+
+        void applyTo(PreparedStatement statement) throws SQLException {
+            statement.setQueryTimeout(queryTimeout);
+            statement.setFetchSize(fetchSize);
+            statement.setFetchDirection(fetchDirection);
+            statement.setMaxRows(maxRows);
+            statement.setMaxFieldSize(maxFieldSize);
+        }
+    }
+
+
+    private static class CachedStatementHandler implements InvocationHandler {
+
+        private final StatementCache cache;
+        private final Connection connectionProxy;
+        private final String sql;
+        private final PreparedStatement target;
+        private boolean closed;
+        private boolean settingsChanged;
+
+        CachedStatementHandler(StatementCache cache, Connection connectionProxy, String sql, PreparedStatement target) {
+            this.cache = cache;
+            this.connectionProxy = connectionProxy;
+            this.sql = sql;
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        cache.release(sql, target, settingsChanged);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || target.isClosed();
+                case "getConnection":
+                    return connectionProxy;
+                default:
+                    break;
+            }
+
+            if (closed) {
+                throw new SQLException("statement is closed. sql = " + sql);
+            }
+            if (StatementSettings.isSetter(method.getName())) {
+                settingsChanged = true;
+            }
+
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        }
+    }
+}
@@ -2,11 +2,16 @@ package hello.jdbc.domain;
 
 import lombok.Data;
 
+/**
+ * version - 낙관적 락(compare-and-set)에 사용한다. 변경될 때마다 1씩 증가한다.
+ *   alter table member add column if not exists version bigint default 0 not null; (schema.sql)
+ */
 @Data
 public class Member {
 
     private String memberId;
     private int money;
+    private long version;
 
     public Member() { }
 
@@ -14,4 +19,10 @@ public class Member {
         this.memberId = memberId;
         this.money = money;
     }
+
+    public Member(String memberId, int money, long version) {
+        this.memberId = memberId;
+        this.money = money;
+        this.version = version;
+    }
 }
@@ -0,0 +1,141 @@
+package hello.jdbc.lock;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+
+/**
+ *  JVM 안의 줄무늬(striped) 락
+ *
+ *  memberId의 해시로 stripe를 고르고, 여러 키를 잠글 때는 stripe 번호 순서대로 잠가서 교착 상태가 생기지 않는다.
+ *  같은 stripe에 걸린 키는 한 번만 잠근다.
+ *  stripe 수는 2의 거듭제곱으로 올림한다.
+ */
+public class StripedLockManager {
+
+    public static final int DEFAULT_STRIPES = 64;
+
+    private final ReentrantLock[] locks;
+    private final int mask;
+
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder contended = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final AtomicLongArray contendedByStripe;
+
+    public StripedLockManager() {
+        this(DEFAULT_STRIPES);
+    }
+
+    public StripedLockManager(int stripes) {
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("stripes must be positive. stripes = " + stripes);
+        }
+        int size = stripes == 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+
+        this.locks = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        this.mask = size - 1;
+        this.contendedByStripe = new AtomicLongArray(size);
+    }
+
+
+    public void runWithLocks(Runnable action, String... keys) {
+        callWithLocks(() -> {
+            action.run();
+            return null;
+        }, keys);
+    }
+
+    public <T> T callWithLocks(Supplier<T> action, String... keys) {
+        int[] stripes = stripesOf(keys);
+
+        int locked = 0;
+        try {
+            for (int stripe : stripes) {
+                lock(stripe);
+                locked++;
+            }
+            return action.get();
+        } finally {
+            for (int i = locked - 1; i >= 0; i--) {
+                locks[stripes[i]].unlock();
+            }
+        }
+    }
+
+
+    public int stripeOf(String key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    public int getStripeCount() {
+        return locks.length;
+    }
+
+    public long getAcquisitions() {
+        return acquisitions.sum();
+    }
+
+    /**
+     * 바로 잠그지 못하고 기다린 횟수
+     */
+    public long getContended() {
+        return contended.sum();
+    }
+
+    public long getWaitNanos() {
+        return waitNanos.sum();
+    }
+
+    public long getContended(int stripe) {
+        return contendedByStripe.get(stripe);
+    }
+
+    /**
+     * 지금 기다리고 있는 스레드 수 (대략적인 값)
+     */
+    public int getQueueLength(int stripe) {
+        return locks[stripe].getQueueLength();
+    }
+
+
+    private void lock(int stripe) {
+        acquisitions.increment();
+        ReentrantLock lock = locks[stripe];
+        if (lock.tryLock()) {
+            return;
+        }
+
+        contended.increment();
+        contendedByStripe.incrementAndGet(stripe);
+        long start = System.nanoTime();
+        lock.lock();
+        waitNanos.add(System.nanoTime() - start);
+    }
+
+    /**
+     * 정렬 + 중복 제거
+     */
+    private int[] stripesOf(String... keys) {
+        int[] stripes = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            stripes[i] = stripeOf(keys[i]);
+        }
+        Arrays.sort(stripes);
+
+        int size = 0;
+        for (int i = 0; i < stripes.length; i++) {
+            if (i == 0 || stripes[i] != stripes[i - 1]) {
+                stripes[size++] = stripes[i];
+            }
+        }
+        return Arrays.copyOf(stripes, size);
+    }
+}
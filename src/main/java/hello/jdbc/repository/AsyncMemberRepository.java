@@ -0,0 +1,29 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * MemberRepository 비동기 버전
+ * 호출한 스레드의 트랜잭션에 참여하지 않는다. 작업마다 커넥션을 따로 얻고 바로 커밋된다. (auto commit)
+ * 실패하면 예외는 CompletableFuture에 담긴다.
+ */
+public interface AsyncMemberRepository {
+
+    CompletableFuture<Member> saveAsync(Member member);
+
+    CompletableFuture<Member> findByIdAsync(String memberId);
+
+    CompletableFuture<Map<String, Member>> findAllByIdAsync(Collection<String> memberIds);
+
+    CompletableFuture<Void> updateAsync(String memberId, int money);
+
+    CompletableFuture<Void> deleteAsync(String memberId);
+
+    CompletableFuture<Void> addMoneyAsync(String memberId, int delta);
+
+    CompletableFuture<Void> transferAsync(String fromId, String toId, int money);
+}
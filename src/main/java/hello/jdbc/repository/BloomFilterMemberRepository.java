@@ -0,0 +1,425 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+
+/**
+ *  없는 회원 조회를 Bloom filter로 걸러낸다. (MemberRepositoryV5 등을 감싸서 사용)
+ *
+ *  필터에 없다고 나오면 회원은 확실히 없다. 커넥션 풀을 거치지 않고 바로 예외를 던진다.
+ *  있다고 나오면(오탐 포함) target으로 조회한다.
+ *  없는 회원의 예외는 missException으로 만든다. target과 같은 예외를 만들어야 호출자가 두 경우를 구분하지 않는다.
+ *    (MemberRepositoryV5 - EmptyResultDataAccessException, 기본값 - NoSuchElementException)
+ *
+ *  - 크기: 예상 회원 수 n, 오탐률 p 로 비트 수 m = -n ln p / (ln 2)^2, 해시 수 k = (m / n) ln 2
+ *  - 생성할 때 streamAll()로 member_id를 모두 읽어서 채운다.
+ *  - save는 target을 호출하기 전에 바로 필터에 넣는다. 롤백되면 오탐이 하나 늘 뿐이다.
+ *  - Bloom filter에서는 지울 수 없으므로 delete는 커밋된 뒤에 지워진 건수만 센다.
+ *    rebuildThreshold를 넘으면 백그라운드에서 findPage로 한 페이지씩 새 필터를 만들고 volatile 참조를 바꾼다.
+ *    다시 만드는 동안에도 조회는 기존 필터로 계속된다. close 뒤에는 다시 만들지 않는다.
+ *
+ *  이 decorator를 거치지 않고 추가된 회원(다른 애플리케이션 등)은 다시 만들 때까지 없는 것으로 보인다.
+ */
+@Slf4j
+public class BloomFilterMemberRepository implements MemberRepository, AutoCloseable {
+
+    private static final int REBUILD_PAGE_SIZE = 1000;
+
+    private final MemberRepository target;
+    private final long expectedInsertions;
+    private final double falsePositiveRate;
+    private final long rebuildThreshold;
+    private final Function<String, ? extends RuntimeException> missException;
+
+    private volatile BloomFilter filter;
+    // 다시 만드는 중인 필터. 그동안 save 하는 id는 여기에도 넣는다.
+    private BloomFilter rebuilding;
+    private final ReentrantReadWriteLock publishLock = new ReentrantReadWriteLock();
+    // 필터에 넣었지만 아직 커밋(또는 롤백)되지 않은 id
+    private final Set<String> pendingSaves = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong staleCount = new AtomicLong();
+    private final AtomicLong shortCircuitCount = new AtomicLong();
+    private final ExecutorService rebuilder;
+    private final ReentrantLock rebuildLock = new ReentrantLock();
+    private CompletableFuture<Void> rebuild = CompletableFuture.completedFuture(null);
+    private boolean closed;
+
+    public BloomFilterMemberRepository(MemberRepository target, long expectedInsertions, double falsePositiveRate) {
+        this(target, expectedInsertions, falsePositiveRate, Math.max(1, expectedInsertions / 10));
+    }
+
+    public BloomFilterMemberRepository(MemberRepository target, long expectedInsertions, double falsePositiveRate,
+                                       long rebuildThreshold) {
+        this(target, expectedInsertions, falsePositiveRate, rebuildThreshold,
+                memberId -> new NoSuchElementException("member not fount memberId = " + memberId));
+    }
+
+    public BloomFilterMemberRepository(MemberRepository target, long expectedInsertions, double falsePositiveRate,
+                                       long rebuildThreshold, Function<String, ? extends RuntimeException> missException) {
+        this.target = target;
+        this.expectedInsertions = expectedInsertions;
+        this.falsePositiveRate = falsePositiveRate;
+        this.rebuildThreshold = rebuildThreshold;
+        this.missException = missException;
+        this.rebuilder = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "member-bloom-rebuild");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        BloomFilter initial = new BloomFilter(expectedInsertions, falsePositiveRate);
+        long[] count = new long[1];
+        try (Stream<Member> members = target.streamAll()) {
+            members.forEach(member -> {
+                initial.put(member.getMemberId());
+                count[0]++;
+            });
+        }
+        this.filter = initial;
+        log.info("bloom filter built members = {}, bits = {}, hashes = {}", count[0], initial.numBits, initial.numHashes);
+    }
+
+
+    public boolean mightContain(String memberId) {
+        return filter.mightContain(memberId);
+    }
+
+    public long getShortCircuitCount() {
+        return shortCircuitCount.get();
+    }
+
+    public long getStaleCount() {
+        return staleCount.get();
+    }
+
+    /**
+     * 지금 바로 새 필터를 만든다. 이미 만드는 중이면 그 작업을 돌려준다.
+     * close 뒤에는 RejectedExecutionException으로 실패한 future를 돌려준다.
+     */
+    public CompletableFuture<Void> rebuild() {
+        rebuildLock.lock();
+        try {
+            if (closed) {
+                return CompletableFuture.failedFuture(new RejectedExecutionException("bloom filter repository is closed"));
+            }
+            if (rebuild.isDone()) {
+                rebuild = CompletableFuture.runAsync(this::doRebuild, rebuilder);
+            }
+            return rebuild;
+        } finally {
+            rebuildLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        rebuildLock.lock();
+        try {
+            closed = true;
+        } finally {
+            rebuildLock.unlock();
+        }
+        rebuilder.shutdownNow();
+    }
+
+
+    @Override
+    public Member findById(String memberId) {
+        if (!filter.mightContain(memberId)) {
+            shortCircuitCount.incrementAndGet();
+            throw missException.apply(memberId);
+        }
+        return target.findById(memberId);
+    }
+
+    @Override
+    public Map<String, Member> findAllById(Collection<String> memberIds) {
+        BloomFilter current = filter;
+        List<String> candidates = new ArrayList<>(memberIds.size());
+        for (String memberId : memberIds) {
+            if (current.mightContain(memberId)) {
+                candidates.add(memberId);
+            }
+        }
+        shortCircuitCount.addAndGet(memberIds.size() - candidates.size());
+        return candidates.isEmpty() ? Map.of() : target.findAllById(candidates);
+    }
+
+    @Override
+    public Member findByIdForUpdate(String memberId) {
+        return target.findByIdForUpdate(memberId);
+    }
+
+    @Override
+    public Stream<Member> streamAll() {
+        return target.streamAll();
+    }
+
+    @Override
+    public MemberPage findPage(String pageToken, int pageSize) {
+        return target.findPage(pageToken, pageSize);
+    }
+
+
+    @Override
+    public Member save(Member member) {
+        List<String> memberIds = List.of(member.getMemberId());
+        added(memberIds);
+        try {
+            return target.save(member);
+        } finally {
+            afterCompletion(() -> pendingSaves.removeAll(memberIds));
+        }
+    }
+
+    @Override
+    public void saveAll(List<Member> members) {
+        List<String> memberIds = MemberBatchSupport.ids(members, Member::getMemberId);
+        added(memberIds);
+        try {
+            target.saveAll(members);
+        } finally {
+            afterCompletion(() -> pendingSaves.removeAll(memberIds));
+        }
+    }
+
+    @Override
+    public void delete(String memberId) {
+        target.delete(memberId);
+        removed(1);
+    }
+
+    @Override
+    public void deleteAll(Collection<String> memberIds) {
+        target.deleteAll(memberIds);
+        removed(memberIds.size());
+    }
+
+    @Override
+    public void update(String memberId, int money) {
+        target.update(memberId, money);
+    }
+
+    @Override
+    public void updateWithVersion(String memberId, int money, long version) {
+        target.updateWithVersion(memberId, money, version);
+    }
+
+    @Override
+    public void addMoney(String memberId, int delta) {
+        target.addMoney(memberId, delta);
+    }
+
+    @Override
+    public void addMoney(String memberId, int delta, int requiredMoney) {
+        target.addMoney(memberId, delta, requiredMoney);
+    }
+
+    @Override
+    public void transfer(String fromId, String toId, int money) {
+        target.transfer(fromId, toId, money);
+    }
+
+    @Override
+    public void transferIfSufficient(String fromId, String toId, int money) {
+        target.transferIfSufficient(fromId, toId, money);
+    }
+
+    @Override
+    public void updateAll(List<Member> members) {
+        target.updateAll(members);
+    }
+
+
+    private void added(Collection<String> memberIds) {
+        publishLock.readLock().lock();
+        try {
+            pendingSaves.addAll(memberIds);
+            for (String memberId : memberIds) {
+                filter.put(memberId);
+                if (rebuilding != null) {
+                    rebuilding.put(memberId);
+                }
+            }
+        } finally {
+            publishLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 커밋된 뒤에 지워진 건수를 센다.
+     */
+    private void removed(int count) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            countStale(count);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    countStale(count);
+                }
+            }
+        });
+    }
+
+    private void countStale(int count) {
+        if (staleCount.addAndGet(count) >= rebuildThreshold) {
+            rebuild();
+        }
+    }
+
+    private void afterCompletion(Runnable task) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            task.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                task.run();
+            }
+        });
+    }
+
+    /**
+     * 1. 새 필터를 공개하고 아직 커밋되지 않은 save의 id를 넣는다. 이후의 save는 새 필터에도 들어간다.
+     * 2. findPage로 한 페이지씩 읽어서 채운다.
+     * 3. 새 필터로 바꾼다.
+     */
+    private void doRebuild() {
+        long staleAtStart = staleCount.get();
+        BloomFilter next = new BloomFilter(expectedInsertions, falsePositiveRate);
+
+        publishLock.writeLock().lock();
+        try {
+            rebuilding = next;
+            pendingSaves.forEach(next::put);
+        } finally {
+            publishLock.writeLock().unlock();
+        }
+
+        long count = 0;
+        try {
+            String pageToken = null;
+            do {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new IllegalStateException("bloom filter rebuild interrupted");
+                }
+                MemberPage page = target.findPage(pageToken, REBUILD_PAGE_SIZE);
+                for (Member member : page.getMembers()) {
+                    next.put(member.getMemberId());
+                }
+                count += page.getMembers().size();
+                pageToken = page.getNextToken();
+            } while (pageToken != null);
+        } catch (RuntimeException e) {
+            log.info("bloom filter rebuild failed", e);
+            publishLock.writeLock().lock();
+            try {
+                rebuilding = null;
+            } finally {
+                publishLock.writeLock().unlock();
+            }
+            throw e;
+        }
+
+        publishLock.writeLock().lock();
+        try {
+            filter = next;
+            rebuilding = null;
+        } finally {
+            publishLock.writeLock().unlock();
+        }
+        staleCount.addAndGet(-staleAtStart);
+        log.info("bloom filter rebuilt members = {}", count);
+    }
+
+
+    /**
+     * 비트 배열은 AtomicLongArray에 담아서 락 없이 넣고 읽는다.
+     */
+    static class BloomFilter {
+
+        private final AtomicLongArray bits;
+        private final long numBits;
+        private final int numHashes;
+
+        BloomFilter(long expectedInsertions, double falsePositiveRate) {
+            long n = Math.max(1, expectedInsertions);
+            long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            this.numBits = Math.max(64, (m + 63) / 64 * 64);
+            this.numHashes = Math.max(1, (int) Math.round((double) numBits / n * Math.log(2)));
+            this.bits = new AtomicLongArray(Math.toIntExact(numBits / 64));
+        }
+
+        void put(String key) {
+            long hash = fnv1a(key);
+            long h1 = fmix64(hash);
+            long h2 = fmix64(hash ^ 0x9E3779B97F4A7C15L) | 1;
+            for (int i = 0; i < numHashes; i++) {
+                long bit = Math.floorMod(h1 + i * h2, numBits);
+                int index = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                long word = bits.get(index);
+                while ((word & mask) == 0 && !bits.compareAndSet(index, word, word | mask)) {
+                    word = bits.get(index);
+                }
+            }
+        }
+
+        boolean mightContain(String key) {
+            long hash = fnv1a(key);
+            long h1 = fmix64(hash);
+            long h2 = fmix64(hash ^ 0x9E3779B97F4A7C15L) | 1;
+            for (int i = 0; i < numHashes; i++) {
+                long bit = Math.floorMod(h1 + i * h2, numBits);
+                if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static long fnv1a(String key) {
+            long hash = 0xcbf29ce484222325L;
+            for (int i = 0; i < key.length(); i++) {
+                hash ^= key.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+            return hash;
+        }
+
+        private static long fmix64(long k) {
+            k ^= k >>> 33;
+            k *= 0xff51afd7ed558ccdL;
+            k ^= k >>> 33;
+            k *= 0xc4ceb93e53a15b4dL;
+            k ^= k >>> 33;
+            return k;
+        }
+    }
+}
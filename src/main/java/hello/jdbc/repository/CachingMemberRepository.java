@@ -0,0 +1,298 @@
+package hello.jdbc.repository;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+
+/**
+ *  findById 읽기 캐시 (MemberRepositoryV4_2, MemberRepositoryV5 등을 감싸서 사용)
+ *
+ *  Caffeine(W-TinyLFU)으로 크기를 제한하고, 선택적으로 TTL을 둔다.
+ *  쓰기가 일어나면 캐시를 지우는데, 트랜잭션 안이면 커밋된 뒤(TransactionSynchronization)에 지운다.
+ *  롤백이 확실하면 지우지 않는다. (커밋 결과를 모르는 경우(STATUS_UNKNOWN)에는 지운다.)
+ *   - 트랜잭션에서 쓴 회원은 그 트랜잭션이 끝날 때까지 캐시를 거치지 않고 읽는다. (커밋 전 값을 캐시에 넣지 않기 위해)
+ *   - 쓴 회원 목록은 트랜잭션마다 따로 둔다. REQUIRES_NEW로 중단(suspend)된 바깥 트랜잭션의 목록은 재개(resume)될 때 다시 묶는다.
+ *   - 조회 도중에 지우기가 일어나면 조회 결과를 캐시에 넣지 않는다. (오래된 값이 다시 들어가는 것 방지)
+ */
+@Slf4j
+public class CachingMemberRepository implements MemberRepository {
+
+    private final MemberRepository target;
+    private final Cache<String, Member> cache;
+
+    // 지우기가 일어날 때마다 증가한다.
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public CachingMemberRepository(MemberRepository target, long maximumSize) {
+        this(target, maximumSize, null);
+    }
+
+    public CachingMemberRepository(MemberRepository target, long maximumSize, Duration expireAfterWrite) {
+        this.target = target;
+
+        Caffeine<Object, Object> builder = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats();
+        if (expireAfterWrite != null) {
+            builder.expireAfterWrite(expireAfterWrite);
+        }
+        this.cache = builder.build();
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+
+    @Override
+    public Member findById(String memberId) {
+        if (writtenInTransaction(memberId)) {
+            return target.findById(memberId);
+        }
+
+        Member cached = cache.getIfPresent(memberId);
+        if (cached != null) {
+            return copy(cached);
+        }
+
+        long before = invalidations.get();
+        Member member = target.findById(memberId);
+        putIfNotInvalidated(before, member);
+        return member;
+    }
+
+    /**
+     * 락을 건 최신 값이 필요한 조회이므로 캐시를 거치지 않는다.
+     */
+    @Override
+    public Member findByIdForUpdate(String memberId) {
+        return target.findByIdForUpdate(memberId);
+    }
+
+    @Override
+    public Map<String, Member> findAllById(Collection<String> memberIds) {
+        Map<String, Member> result = new HashMap<>();
+        List<String> misses = new ArrayList<>();
+
+        for (String memberId : memberIds) {
+            Member cached = writtenInTransaction(memberId) ? null : cache.getIfPresent(memberId);
+            if (cached != null) {
+                result.put(memberId, copy(cached));
+            } else {
+                misses.add(memberId);
+            }
+        }
+
+        if (!misses.isEmpty()) {
+            long before = invalidations.get();
+            Map<String, Member> loaded = target.findAllById(misses);
+            for (Member member : loaded.values()) {
+                if (!writtenInTransaction(member.getMemberId())) {
+                    putIfNotInvalidated(before, member);
+                }
+            }
+            result.putAll(loaded);
+        }
+        return result;
+    }
+
+    @Override
+    public Stream<Member> streamAll() {
+        return target.streamAll();
+    }
+
+    @Override
+    public MemberPage findPage(String pageToken, int pageSize) {
+        return target.findPage(pageToken, pageSize);
+    }
+
+
+    @Override
+    public Member save(Member member) {
+        try {
+            return target.save(member);
+        } finally {
+            invalidate(List.of(member.getMemberId()));
+        }
+    }
+
+    @Override
+    public void update(String memberId, int money) {
+        try {
+            target.update(memberId, money);
+        } finally {
+            invalidate(List.of(memberId));
+        }
+    }
+
+    @Override
+    public void updateWithVersion(String memberId, int money, long version) {
+        try {
+            target.updateWithVersion(memberId, money, version);
+        } finally {
+            invalidate(List.of(memberId));
+        }
+    }
+
+    @Override
+    public void delete(String memberId) {
+        try {
+            target.delete(memberId);
+        } finally {
+            invalidate(List.of(memberId));
+        }
+    }
+
+    @Override
+    public void addMoney(String memberId, int delta) {
+        try {
+            target.addMoney(memberId, delta);
+        } finally {
+            invalidate(List.of(memberId));
+        }
+    }
+
+    @Override
+    public void addMoney(String memberId, int delta, int requiredMoney) {
+        try {
+            target.addMoney(memberId, delta, requiredMoney);
+        } finally {
+            invalidate(List.of(memberId));
+        }
+    }
+
+    @Override
+    public void transfer(String fromId, String toId, int money) {
+        try {
+            target.transfer(fromId, toId, money);
+        } finally {
+            invalidate(List.of(fromId, toId));
+        }
+    }
+
+    @Override
+    public void transferIfSufficient(String fromId, String toId, int money) {
+        try {
+            target.transferIfSufficient(fromId, toId, money);
+        } finally {
+            invalidate(List.of(fromId, toId));
+        }
+    }
+
+    @Override
+    public void saveAll(List<Member> members) {
+        try {
+            target.saveAll(members);
+        } finally {
+            invalidate(MemberBatchSupport.ids(members, Member::getMemberId));
+        }
+    }
+
+    @Override
+    public void updateAll(List<Member> members) {
+        try {
+            target.updateAll(members);
+        } finally {
+            invalidate(MemberBatchSupport.ids(members, Member::getMemberId));
+        }
+    }
+
+    @Override
+    public void deleteAll(Collection<String> memberIds) {
+        try {
+            target.deleteAll(memberIds);
+        } finally {
+            invalidate(memberIds);
+        }
+    }
+
+
+    /**
+     * 확인과 저장을 compute 안에서 한 번에 한다. evict는 invalidations를 먼저 올리고 지우므로
+     * 확인을 통과해서 들어간 값은 그 뒤의 지우기에 지워지고, 확인 뒤에 올라갔으면 넣지 않는다.
+     */
+    private void putIfNotInvalidated(long before, Member member) {
+        cache.asMap().compute(member.getMemberId(),
+                (memberId, current) -> invalidations.get() == before ? copy(member) : current);
+    }
+
+    /**
+     * 트랜잭션이 없으면 바로 지우고, 있으면 커밋된 뒤에 지운다.
+     */
+    private void invalidate(Collection<String> memberIds) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            evict(memberIds);
+            return;
+        }
+        writtenIds().addAll(memberIds);
+    }
+
+    private void evict(Collection<String> memberIds) {
+        invalidations.incrementAndGet();
+        cache.invalidateAll(memberIds);
+    }
+
+    private boolean writtenInTransaction(String memberId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return false;
+        }
+        @SuppressWarnings("unchecked")
+        Set<String> written = (Set<String>) TransactionSynchronizationManager.getResource(this);
+        return written != null && written.contains(memberId);
+    }
+
+    /**
+     * 현재 트랜잭션에서 쓴 memberId 목록. 처음 쓸 때 트랜잭션에 묶고, 트랜잭션이 끝나면 푼다.
+     */
+    @SuppressWarnings("unchecked")
+    private Set<String> writtenIds() {
+        Set<String> written = (Set<String>) TransactionSynchronizationManager.getResource(this);
+        if (written != null) {
+            return written;
+        }
+
+        Set<String> newWritten = new HashSet<>();
+        TransactionSynchronizationManager.bindResource(this, newWritten);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void suspend() {
+                TransactionSynchronizationManager.unbindResource(CachingMemberRepository.this);
+            }
+
+            @Override
+            public void resume() {
+                TransactionSynchronizationManager.bindResource(CachingMemberRepository.this, newWritten);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(CachingMemberRepository.this);
+                // STATUS_UNKNOWN: 커밋되었을 수도 있다.
+                if (status != STATUS_ROLLED_BACK) {
+                    evict(newWritten);
+                }
+            }
+        });
+        return newWritten;
+    }
+
+    private Member copy(Member member) {
+        return new Member(member.getMemberId(), member.getMoney(), member.getVersion());
+    }
+}
@@ -0,0 +1,324 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+
+/**
+ *  findById 요청 합치기 (MemberRepositoryV5 등을 감싸서 사용)
+ *
+ *  - 같은 memberId를 동시에 조회하면 진행 중인 조회 하나를 같이 기다린다. (single-flight)
+ *  - 서로 다른 memberId는 windowMillis 동안 (또는 maxBatchSize 개가 모일 때까지) 모았다가 findAllById(IN 조회) 한 번으로 읽고 나눠준다.
+ *    maxBatchSize가 차면 마지막으로 들어온 호출 스레드가 바로 조회한다.
+ *  - 조회 결과에 없는 회원은 target.findById로 한 번 더 조회해서 target과 같은 예외가 나게 한다.
+ *  - 트랜잭션 안에서는 그 트랜잭션의 커넥션으로 읽어야 하므로 합치지 않고 target을 바로 호출한다.
+ *  - 변경(save, update, addMoney, transfer 등)을 하면 그 회원의 진행 중인 조회를 inFlight에서 뺀다. (트랜잭션 안이면 끝난 뒤에)
+ *    변경 뒤에 들어온 조회는 변경 전에 시작한 조회를 같이 기다리지 않고 새로 읽는다.
+ *  - close 뒤의 조회(또는 조회 예약이 거절된 경우)는 합치지 않고 target을 바로 호출한다.
+ *
+ *  호출자마다 Member 복사본을 돌려준다.
+ */
+@Slf4j
+public class CoalescingMemberRepository implements MemberRepository, AutoCloseable {
+
+    private final MemberRepository target;
+    private final long windowMillis;
+    private final int maxBatchSize;
+
+    private final Map<String, CompletableFuture<Member>> inFlight = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private Map<String, CompletableFuture<Member>> pending = new LinkedHashMap<>();
+    private boolean closed;
+    private final ScheduledExecutorService scheduler;
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong queryCount = new AtomicLong();
+
+    public CoalescingMemberRepository(MemberRepository target, long windowMillis, int maxBatchSize) {
+        this.target = target;
+        this.windowMillis = windowMillis;
+        this.maxBatchSize = maxBatchSize;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "member-coalescing");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    public long getQueryCount() {
+        return queryCount.get();
+    }
+
+    /**
+     * 모아 둔 조회를 마저 처리하고 스레드를 종료한다.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        } finally {
+            lock.unlock();
+        }
+        scheduler.execute(this::flushPending);
+        scheduler.shutdown();
+    }
+
+
+    @Override
+    public Member findById(String memberId) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return target.findById(memberId);
+        }
+        requestCount.incrementAndGet();
+
+        CompletableFuture<Member> created = new CompletableFuture<>();
+        CompletableFuture<Member> existing = inFlight.putIfAbsent(memberId, created);
+        if (existing == null) {
+            enqueue(memberId, created);
+        }
+
+        Member member;
+        try {
+            member = (existing != null ? existing : created).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+
+        if (member == null) {
+            // findAllById 결과에 없던 회원 - target과 같은 예외가 나게 한다.
+            queryCount.incrementAndGet();
+            return target.findById(memberId);
+        }
+        return new Member(member.getMemberId(), member.getMoney(), member.getVersion());
+    }
+
+    private void enqueue(String memberId, CompletableFuture<Member> future) {
+        Map<String, CompletableFuture<Member>> full = null;
+        boolean direct = false;
+        lock.lock();
+        try {
+            if (closed) {
+                direct = true;
+            } else {
+                schedule(memberId, future);
+                if (pending.size() >= maxBatchSize) {
+                    full = pending;
+                    pending = new LinkedHashMap<>();
+                }
+            }
+        } catch (RejectedExecutionException e) {
+            pending.remove(memberId, future);
+            direct = true;
+        } finally {
+            lock.unlock();
+        }
+
+        if (direct) {
+            loadDirect(memberId, future);
+        } else if (full != null) {
+            flush(full);
+        }
+    }
+
+    /**
+     * 변경 때문에 inFlight에서 빠진 조회가 아직 pending에 있으면, 새 조회의 결과로 같이 완료한다.
+     */
+    private void schedule(String memberId, CompletableFuture<Member> future) {
+        CompletableFuture<Member> previous = pending.put(memberId, future);
+        if (previous != null) {
+            future.whenComplete((member, e) -> {
+                if (e != null) {
+                    previous.completeExceptionally(e);
+                } else {
+                    previous.complete(member);
+                }
+            });
+        }
+        if (pending.size() == 1) {
+            scheduler.schedule(this::flushPending, windowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 합치지 못한 조회는 target으로 바로 읽는다. 같이 기다리던 호출자도 이 결과를 받는다.
+     */
+    private void loadDirect(String memberId, CompletableFuture<Member> future) {
+        queryCount.incrementAndGet();
+        inFlight.remove(memberId, future);
+        try {
+            future.complete(target.findById(memberId));
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    private void flushPending() {
+        Map<String, CompletableFuture<Member>> batch;
+        lock.lock();
+        try {
+            batch = pending;
+            pending = new LinkedHashMap<>();
+        } finally {
+            lock.unlock();
+        }
+        if (!batch.isEmpty()) {
+            flush(batch);
+        }
+    }
+
+    /**
+     * 결과를 나눠주기 전에 inFlight에서 빼서, 그 뒤에 들어온 조회는 새로 읽게 한다.
+     */
+    private void flush(Map<String, CompletableFuture<Member>> batch) {
+        queryCount.incrementAndGet();
+        try {
+            Map<String, Member> loaded = target.findAllById(batch.keySet());
+            batch.forEach((memberId, future) -> {
+                inFlight.remove(memberId, future);
+                future.complete(loaded.get(memberId));
+            });
+        } catch (RuntimeException e) {
+            log.info("coalesced findAllById failed size = {}", batch.size(), e);
+            batch.forEach((memberId, future) -> {
+                inFlight.remove(memberId, future);
+                future.completeExceptionally(e);
+            });
+        }
+    }
+
+
+    @Override
+    public Member findByIdForUpdate(String memberId) {
+        return target.findByIdForUpdate(memberId);
+    }
+
+    @Override
+    public Map<String, Member> findAllById(Collection<String> memberIds) {
+        return target.findAllById(memberIds);
+    }
+
+    @Override
+    public Stream<Member> streamAll() {
+        return target.streamAll();
+    }
+
+    @Override
+    public MemberPage findPage(String pageToken, int pageSize) {
+        return target.findPage(pageToken, pageSize);
+    }
+
+    @Override
+    public Member save(Member member) {
+        Member saved = target.save(member);
+        invalidate(List.of(member.getMemberId()));
+        return saved;
+    }
+
+    @Override
+    public void update(String memberId, int money) {
+        target.update(memberId, money);
+        invalidate(List.of(memberId));
+    }
+
+    @Override
+    public void updateWithVersion(String memberId, int money, long version) {
+        target.updateWithVersion(memberId, money, version);
+        invalidate(List.of(memberId));
+    }
+
+    @Override
+    public void delete(String memberId) {
+        target.delete(memberId);
+        invalidate(List.of(memberId));
+    }
+
+    @Override
+    public void addMoney(String memberId, int delta) {
+        target.addMoney(memberId, delta);
+        invalidate(List.of(memberId));
+    }
+
+    @Override
+    public void addMoney(String memberId, int delta, int requiredMoney) {
+        target.addMoney(memberId, delta, requiredMoney);
+        invalidate(List.of(memberId));
+    }
+
+    @Override
+    public void transfer(String fromId, String toId, int money) {
+        target.transfer(fromId, toId, money);
+        invalidate(List.of(fromId, toId));
+    }
+
+    @Override
+    public void transferIfSufficient(String fromId, String toId, int money) {
+        target.transferIfSufficient(fromId, toId, money);
+        invalidate(List.of(fromId, toId));
+    }
+
+    @Override
+    public void saveAll(List<Member> members) {
+        target.saveAll(members);
+        invalidate(members.stream().map(Member::getMemberId).collect(Collectors.toList()));
+    }
+
+    @Override
+    public void updateAll(List<Member> members) {
+        target.updateAll(members);
+        invalidate(members.stream().map(Member::getMemberId).collect(Collectors.toList()));
+    }
+
+    @Override
+    public void deleteAll(Collection<String> memberIds) {
+        target.deleteAll(memberIds);
+        invalidate(memberIds);
+    }
+
+
+    /**
+     * 진행 중인 조회를 inFlight에서 뺀다. 트랜잭션 안이면 커밋(또는 롤백) 뒤에 뺀다.
+     * 그 전에는 다른 커넥션에서 변경이 보이지 않으므로 진행 중인 조회를 같이 기다려도 된다.
+     */
+    private void invalidate(Collection<String> memberIds) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            memberIds.forEach(inFlight::remove);
+            return;
+        }
+        List<String> ids = List.copyOf(memberIds);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                ids.forEach(inFlight::remove);
+            }
+        });
+    }
+}
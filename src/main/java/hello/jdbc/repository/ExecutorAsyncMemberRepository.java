@@ -0,0 +1,179 @@
+package hello.jdbc.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+
+/**
+ *  전용 JDBC 스레드 풀에서 MemberRepository를 호출하는 비동기 파사드
+ *
+ *  스레드 수는 커넥션 풀 크기에 맞춘다. HikariDataSource를 받는 생성자는 풀 크기(maximumPoolSize)를 그대로 쓴다.
+ *  스레드가 풀 크기보다 많으면 남는 스레드는 커넥션을 기다리다 connectionTimeout에 걸린다.
+ *  스레드가 모두 바쁘면 작업은 크기가 정해진 큐에서 기다린다.
+ *  큐도 가득 차면 RejectionPolicy에 따라
+ *    ABORT       : RejectedExecutionException으로 실패한 future를 돌려준다.
+ *    CALLER_RUNS : 호출한 스레드에서 바로 실행한다. (호출자가 느려지면서 자연스럽게 backpressure가 걸린다)
+ *
+ *  여러 회원을 조회할 때 findByIdAsync를 동시에 호출하면 조회가 겹쳐서 실행된다.
+ *
+ *  작업은 전용 스레드에서 자기 커넥션으로 실행되므로 호출자의 트랜잭션에 참여하지 않는다.
+ *  (호출자가 롤백해도 saveAsync, updateAsync 등은 이미 커밋되어 있다)
+ *  그래서 트랜잭션이 진행 중인 스레드에서 호출하면 IllegalStateException으로 실패한 future를 돌려준다.
+ */
+@Slf4j
+public class ExecutorAsyncMemberRepository implements AsyncMemberRepository, AutoCloseable {
+
+    public enum RejectionPolicy {
+        ABORT, CALLER_RUNS
+    }
+
+    private final MemberRepository target;
+    private final ThreadPoolExecutor executor;
+    private final RejectionPolicy rejectionPolicy;
+
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+
+    public ExecutorAsyncMemberRepository(MemberRepository target, HikariDataSource dataSource, int queueCapacity) {
+        this(target, dataSource.getMaximumPoolSize(), queueCapacity, RejectionPolicy.ABORT);
+    }
+
+    public ExecutorAsyncMemberRepository(MemberRepository target, int poolSize, int queueCapacity) {
+        this(target, poolSize, queueCapacity, RejectionPolicy.ABORT);
+    }
+
+    public ExecutorAsyncMemberRepository(MemberRepository target, int poolSize, int queueCapacity, RejectionPolicy rejectionPolicy) {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("poolSize must be positive: " + poolSize);
+        }
+        this.target = target;
+        this.rejectionPolicy = rejectionPolicy;
+
+        AtomicInteger sequence = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "member-jdbc-" + sequence.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (runnable, pool) -> {
+                    rejectedCount.incrementAndGet();
+                    throw new RejectedExecutionException("jdbc executor queue is full size = " + pool.getQueue().size());
+                });
+    }
+
+
+    @Override
+    public CompletableFuture<Member> saveAsync(Member member) {
+        return submit(() -> target.save(member));
+    }
+
+    @Override
+    public CompletableFuture<Member> findByIdAsync(String memberId) {
+        return submit(() -> target.findById(memberId));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Member>> findAllByIdAsync(Collection<String> memberIds) {
+        return submit(() -> target.findAllById(memberIds));
+    }
+
+    @Override
+    public CompletableFuture<Void> updateAsync(String memberId, int money) {
+        return run(() -> target.update(memberId, money));
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteAsync(String memberId) {
+        return run(() -> target.delete(memberId));
+    }
+
+    @Override
+    public CompletableFuture<Void> addMoneyAsync(String memberId, int delta) {
+        return run(() -> target.addMoney(memberId, delta));
+    }
+
+    @Override
+    public CompletableFuture<Void> transferAsync(String fromId, String toId, int money) {
+        return run(() -> target.transfer(fromId, toId, money));
+    }
+
+
+    public int getPoolSize() {
+        return executor.getCorePoolSize();
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public long getCompletedTaskCount() {
+        return executor.getCompletedTaskCount();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    private CompletableFuture<Void> run(Runnable task) {
+        return submit(() -> {
+            task.run();
+            return null;
+        });
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> task) {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return CompletableFuture.failedFuture(
+                    new IllegalStateException("async repository call would escape the caller's transaction"));
+        }
+        try {
+            CompletableFuture<T> future = CompletableFuture.supplyAsync(task, executor);
+            maxQueueDepth.accumulateAndGet(executor.getQueue().size(), Math::max);
+            return future;
+        } catch (RejectedExecutionException e) {
+            if (rejectionPolicy == RejectionPolicy.CALLER_RUNS && !executor.isShutdown()) {
+                log.debug("jdbc executor saturated, running in caller thread");
+                try {
+                    return CompletableFuture.completedFuture(task.get());
+                } catch (RuntimeException taskEx) {
+                    return CompletableFuture.failedFuture(taskEx);
+                }
+            }
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+}
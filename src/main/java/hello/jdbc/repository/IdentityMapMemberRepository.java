@@ -0,0 +1,264 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+
+/**
+ *  트랜잭션 범위 1차 캐시 (identity map)
+ *
+ *  트랜잭션 안에서 같은 회원을 여러 번 findById 하면 쿼리 없이 같은 Member 인스턴스를 돌려준다.
+ *  update, addMoney, transfer 등으로 변경하면 캐시된 인스턴스의 money, version도 같이 맞춘다.
+ *  캐시는 TransactionSynchronizationManager에 묶여 있고, 커밋이나 롤백으로 트랜잭션이 끝나면 버린다.
+ *  REQUIRES_NEW 등으로 트랜잭션이 중단(suspend)되면 캐시도 같이 풀어 두었다가 재개(resume)될 때 다시 묶는다.
+ *  안쪽 트랜잭션은 자기 커넥션으로 새로 읽는다.
+ *  savepoint로 되돌리는 것(rollbackToSavepoint)은 알 수 없으므로, savepoint를 쓰는 트랜잭션에서는 캐시된 값이 되돌아가지 않는다.
+ *  트랜잭션 밖에서는 target을 그대로 호출한다.
+ */
+@Slf4j
+public class IdentityMapMemberRepository implements MemberRepository {
+
+    private final MemberRepository target;
+
+    public IdentityMapMemberRepository(MemberRepository target) {
+        this.target = target;
+    }
+
+
+    @Override
+    public Member findById(String memberId) {
+        Map<String, Member> identityMap = identityMap();
+        if (identityMap == null) {
+            return target.findById(memberId);
+        }
+
+        Member member = identityMap.get(memberId);
+        if (member == null) {
+            member = target.findById(memberId);
+            identityMap.put(memberId, member);
+        }
+        return member;
+    }
+
+    /**
+     * 항상 데이터베이스에서 락을 걸고 읽는다. 이미 캐시된 인스턴스가 있으면 값을 맞추고 그 인스턴스를 돌려준다.
+     */
+    @Override
+    public Member findByIdForUpdate(String memberId) {
+        Member locked = target.findByIdForUpdate(memberId);
+
+        Map<String, Member> identityMap = identityMap();
+        if (identityMap == null) {
+            return locked;
+        }
+
+        Member member = identityMap.get(memberId);
+        if (member == null) {
+            identityMap.put(memberId, locked);
+            return locked;
+        }
+        member.setMoney(locked.getMoney());
+        member.setVersion(locked.getVersion());
+        return member;
+    }
+
+    @Override
+    public Map<String, Member> findAllById(Collection<String> memberIds) {
+        Map<String, Member> identityMap = identityMap();
+        if (identityMap == null) {
+            return target.findAllById(memberIds);
+        }
+
+        Map<String, Member> result = new HashMap<>();
+        List<String> misses = new ArrayList<>();
+        for (String memberId : memberIds) {
+            Member member = identityMap.get(memberId);
+            if (member != null) {
+                result.put(memberId, member);
+            } else {
+                misses.add(memberId);
+            }
+        }
+
+        if (!misses.isEmpty()) {
+            Map<String, Member> loaded = target.findAllById(misses);
+            identityMap.putAll(loaded);
+            result.putAll(loaded);
+        }
+        return result;
+    }
+
+    @Override
+    public Stream<Member> streamAll() {
+        return target.streamAll();
+    }
+
+    @Override
+    public MemberPage findPage(String pageToken, int pageSize) {
+        return target.findPage(pageToken, pageSize);
+    }
+
+
+    @Override
+    public Member save(Member member) {
+        Member saved = writeAndGet(List.of(member.getMemberId()), () -> target.save(member));
+        cached(identityMap -> identityMap.put(saved.getMemberId(), saved));
+        return saved;
+    }
+
+    @Override
+    public void update(String memberId, int money) {
+        write(List.of(memberId), () -> target.update(memberId, money));
+        sync(memberId, money);
+    }
+
+    @Override
+    public void updateWithVersion(String memberId, int money, long version) {
+        write(List.of(memberId), () -> target.updateWithVersion(memberId, money, version));
+        sync(memberId, money);
+    }
+
+    @Override
+    public void delete(String memberId) {
+        write(List.of(memberId), () -> target.delete(memberId));
+        cached(identityMap -> identityMap.remove(memberId));
+    }
+
+    @Override
+    public void addMoney(String memberId, int delta) {
+        write(List.of(memberId), () -> target.addMoney(memberId, delta));
+        add(memberId, delta);
+    }
+
+    @Override
+    public void addMoney(String memberId, int delta, int requiredMoney) {
+        write(List.of(memberId), () -> target.addMoney(memberId, delta, requiredMoney));
+        add(memberId, delta);
+    }
+
+    @Override
+    public void transfer(String fromId, String toId, int money) {
+        write(List.of(fromId, toId), () -> target.transfer(fromId, toId, money));
+        add(fromId, -money);
+        add(toId, money);
+    }
+
+    @Override
+    public void transferIfSufficient(String fromId, String toId, int money) {
+        write(List.of(fromId, toId), () -> target.transferIfSufficient(fromId, toId, money));
+        add(fromId, -money);
+        add(toId, money);
+    }
+
+    @Override
+    public void saveAll(List<Member> members) {
+        write(MemberBatchSupport.ids(members, Member::getMemberId), () -> target.saveAll(members));
+        cached(identityMap -> members.forEach(member -> identityMap.put(member.getMemberId(), member)));
+    }
+
+    @Override
+    public void updateAll(List<Member> members) {
+        write(MemberBatchSupport.ids(members, Member::getMemberId), () -> target.updateAll(members));
+        members.forEach(member -> sync(member.getMemberId(), member.getMoney()));
+    }
+
+    @Override
+    public void deleteAll(Collection<String> memberIds) {
+        write(memberIds, () -> target.deleteAll(memberIds));
+        cached(identityMap -> identityMap.keySet().removeAll(memberIds));
+    }
+
+
+    private void sync(String memberId, int money) {
+        cached(identityMap -> {
+            Member member = identityMap.get(memberId);
+            if (member != null) {
+                member.setMoney(money);
+                member.setVersion(member.getVersion() + 1);
+            }
+        });
+    }
+
+    private void add(String memberId, int delta) {
+        cached(identityMap -> {
+            Member member = identityMap.get(memberId);
+            if (member != null) {
+                member.setMoney(member.getMoney() + delta);
+                member.setVersion(member.getVersion() + 1);
+            }
+        });
+    }
+
+    private void write(Collection<String> memberIds, Runnable write) {
+        writeAndGet(memberIds, () -> {
+            write.run();
+            return null;
+        });
+    }
+
+    /**
+     * 쓰기가 실패하면 데이터베이스 상태를 알 수 없으므로 캐시에서 뺀다.
+     */
+    private <T> T writeAndGet(Collection<String> memberIds, Supplier<T> write) {
+        try {
+            return write.get();
+        } catch (RuntimeException e) {
+            cached(identityMap -> identityMap.keySet().removeAll(memberIds));
+            throw e;
+        }
+    }
+
+    private void cached(Consumer<Map<String, Member>> action) {
+        Map<String, Member> identityMap = identityMap();
+        if (identityMap != null) {
+            action.accept(identityMap);
+        }
+    }
+
+
+    /**
+     * 트랜잭션이 없으면 null
+     */
+    @SuppressWarnings("unchecked")
+    private Map<String, Member> identityMap() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+
+        Map<String, Member> identityMap = (Map<String, Member>) TransactionSynchronizationManager.getResource(this);
+        if (identityMap != null) {
+            return identityMap;
+        }
+
+        Map<String, Member> newIdentityMap = new HashMap<>();
+        TransactionSynchronizationManager.bindResource(this, newIdentityMap);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void suspend() {
+                TransactionSynchronizationManager.unbindResource(IdentityMapMemberRepository.this);
+            }
+
+            @Override
+            public void resume() {
+                TransactionSynchronizationManager.bindResource(IdentityMapMemberRepository.this, newIdentityMap);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(IdentityMapMemberRepository.this);
+            }
+        });
+        return newIdentityMap;
+    }
+}
@@ -0,0 +1,156 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.repository.ex.MyBatchUpdateException;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+
+/**
+ *  addBatch / executeBatch 공통 처리
+ *  batchSize 단위로 나눠서 실행하고, 실패한 행은 행 단위로 예외를 변환해서 모아둔다.
+ *  하나의 묶음이 실패해도 나머지 묶음은 계속 실행한다.
+ *  requireRow면 변경된 행이 0인 id(대상 회원이 없음)도 NoSuchElementException으로 실패에 기록한다. (updateAll)
+ */
+class MemberBatchSupport {
+
+    static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private final boolean requireRow;
+    private final List<String> succeededIds = new ArrayList<>();
+    private final Map<String, RuntimeException> failures = new LinkedHashMap<>();
+
+    MemberBatchSupport(boolean requireRow) {
+        this.requireRow = requireRow;
+    }
+
+    @FunctionalInterface
+    interface Binder<T> {
+        void bind(PreparedStatement pstmt, T item) throws SQLException;
+    }
+
+
+    /**
+     * 커넥션은 여기서 닫지 않는다.
+     */
+    static <T> void execute(String task, Connection conn, String sql, List<T> items, int batchSize, boolean requireRow,
+                            Function<T, String> idOf, Binder<T> binder,
+                            Function<SQLException, RuntimeException> translator) throws SQLException {
+
+        checkBatchSize(batchSize);
+        MemberBatchSupport result = new MemberBatchSupport(requireRow);
+
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (int from = 0; from < items.size(); from += batchSize) {
+                List<T> chunk = items.subList(from, Math.min(from + batchSize, items.size()));
+
+                for (T item : chunk) {
+                    binder.bind(pstmt, item);
+                    pstmt.addBatch();
+                }
+
+                try {
+                    result.applied(ids(chunk, idOf), pstmt.executeBatch());
+                } catch (BatchUpdateException e) {
+                    pstmt.clearBatch();
+                    result.record(ids(chunk, idOf), e, translator);
+                }
+            }
+        }
+
+        result.throwIfFailed(task);
+    }
+
+
+    static int checkBatchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive batchSize = " + batchSize);
+        }
+        return batchSize;
+    }
+
+
+    /**
+     * executeBatch가 성공한 묶음의 결과를 행 단위로 기록한다.
+     */
+    void applied(List<String> chunkIds, int[] counts) {
+        for (int i = 0; i < chunkIds.size(); i++) {
+            applied(chunkIds.get(i), i < counts.length ? counts[i] : Statement.SUCCESS_NO_INFO);
+        }
+    }
+
+    private void applied(String memberId, int count) {
+        if (requireRow && count == 0) {
+            failed(memberId, new NoSuchElementException("member not fount memberId = " + memberId));
+        } else {
+            succeeded(memberId);
+        }
+    }
+
+    void succeeded(String memberId) {
+        succeededIds.add(memberId);
+    }
+
+    void failed(String memberId, RuntimeException e) {
+        failures.put(memberId, e);
+    }
+
+
+    /**
+     * 실패한 묶음의 결과를 행 단위로 기록한다.
+     * updateCounts가 EXECUTE_FAILED인 행은 체인된 SQLException을 순서대로 대응시키고,
+     * 드라이버가 실행하지 않은 행(updateCounts 길이 밖)은 묶음 전체의 예외로 기록한다.
+     */
+    void record(List<String> chunkIds, BatchUpdateException e, Function<SQLException, RuntimeException> translator) {
+        int[] counts = e.getUpdateCounts() == null ? new int[0] : e.getUpdateCounts();
+
+        int failedCount = 0;
+        for (int count : counts) {
+            if (count == Statement.EXECUTE_FAILED) {
+                failedCount++;
+            }
+        }
+
+        List<SQLException> chained = new ArrayList<>();
+        for (SQLException next = e.getNextException(); next != null; next = next.getNextException()) {
+            chained.add(next);
+        }
+        boolean perRow = chained.size() == failedCount;
+
+        int failedIndex = 0;
+        for (int i = 0; i < chunkIds.size(); i++) {
+            String memberId = chunkIds.get(i);
+
+            if (i < counts.length && counts[i] != Statement.EXECUTE_FAILED) {
+                applied(memberId, counts[i]);
+            } else if (i < counts.length && perRow) {
+                failed(memberId, translator.apply(chained.get(failedIndex++)));
+            } else {
+                failed(memberId, translator.apply(e));
+            }
+        }
+    }
+
+    void throwIfFailed(String task) {
+        if (!failures.isEmpty()) {
+            throw new MyBatchUpdateException(task, succeededIds, failures);
+        }
+    }
+
+    static <T> List<String> ids(List<T> items, Function<T, String> idOf) {
+        List<String> ids = new ArrayList<>(items.size());
+        for (T item : items) {
+            ids.add(idOf.apply(item));
+        }
+        return ids;
+    }
+}
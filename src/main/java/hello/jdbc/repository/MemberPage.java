@@ -0,0 +1,67 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ *  keyset(seek) 페이지
+ *  nextToken은 마지막 memberId를 감싼 불투명한 값이다. 다음 페이지가 없으면 null
+ */
+public class MemberPage {
+
+    private final List<Member> members;
+    private final String nextToken;
+
+    public MemberPage(List<Member> members, String nextToken) {
+        this.members = Collections.unmodifiableList(members);
+        this.nextToken = nextToken;
+    }
+
+    public List<Member> getMembers() {
+        return members;
+    }
+
+    public String getNextToken() {
+        return nextToken;
+    }
+
+    public boolean hasNext() {
+        return nextToken != null;
+    }
+
+
+    static String encodeToken(String lastMemberId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(lastMemberId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 첫 페이지는 null
+     */
+    static String decodeToken(String token) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+        try {
+            return new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("invalid page token = " + token, e);
+        }
+    }
+
+    /**
+     * pageSize + 1 건을 조회해서 다음 페이지가 있는지 판단한다.
+     */
+    static MemberPage of(List<Member> rows, int pageSize) {
+        if (rows.size() <= pageSize) {
+            return new MemberPage(rows, null);
+        }
+        List<Member> members = rows.subList(0, pageSize);
+        return new MemberPage(members, encodeToken(members.get(pageSize - 1).getMemberId()));
+    }
+}
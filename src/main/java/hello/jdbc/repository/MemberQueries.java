@@ -0,0 +1,298 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+
+/**
+ *  여러 행을 다루는 조회 공통 처리
+ *  커넥션은 여기서 얻거나 닫지 않는다. 리포지토리가 DataSourceUtils로 얻은 커넥션을 넘겨준다.
+ */
+@Slf4j
+class MemberQueries {
+
+    /**
+     * IN (...) 한 번에 넣는 최대 키 개수
+     */
+    static final int MAX_IN_SIZE = 256;
+
+    /**
+     * 이 개수를 넘으면 IN 목록 대신 임시 테이블에 키를 넣고 조인한다.
+     */
+    static final int TEMP_TABLE_THRESHOLD = 4096;
+
+    /**
+     * IN 목록 크기를 2의 거듭제곱으로 맞춰서 SQL 모양을 1, 2, 4, ... 256 으로 고정한다.
+     * 모양이 몇 개 안 되므로 데이터베이스의 쿼리 캐시와 PreparedStatement 캐시가 재사용된다.
+     */
+    private static final String[] IN_SQLS = new String[Integer.numberOfTrailingZeros(MAX_IN_SIZE) + 1];
+
+    static {
+        for (int i = 0; i < IN_SQLS.length; i++) {
+            int size = 1 << i;
+            StringBuilder sql = new StringBuilder("select * from member where member_id in (?");
+            for (int j = 1; j < size; j++) {
+                sql.append(", ?");
+            }
+            IN_SQLS[i] = sql.append(")").toString();
+        }
+    }
+
+    static final int DEFAULT_FETCH_SIZE = 1000;
+
+    /**
+     * findPage 한 번에 읽는 최대 행 수. pageSize + 1 이 넘치지 않고, 한 페이지가 메모리를 다 쓰지 않게 한다.
+     */
+    static final int MAX_PAGE_SIZE = 10_000;
+    // 결과 리스트를 미리 잡는 최대 크기. 실제로 적게 읽히면 큰 배열을 잡을 필요가 없다.
+    private static final int MAX_PAGE_CAPACITY = 1024;
+
+    private static final String STREAM_SQL = "select * from member";
+
+    private static final String FIRST_PAGE_SQL = "select * from member order by member_id limit ?";
+    private static final String NEXT_PAGE_SQL = "select * from member where member_id > ? order by member_id limit ?";
+
+    // H2 lazy query execution: 결과를 서버에서 미리 다 만들지 않고 fetch 할 때마다 조금씩 만든다.
+    private static final String LAZY_ON_SQL = "set lazy_query_execution 1";
+    private static final String LAZY_OFF_SQL = "set lazy_query_execution 0";
+
+    // 세션 단위 임시 테이블. TRANSACTIONAL이 없으면 H2는 DDL 실행 시 진행 중인 트랜잭션을 커밋한다.
+    private static final String CREATE_TEMP_SQL =
+            "create local temporary table if not exists member_id_tmp(member_id varchar(255) primary key) transactional";
+    private static final String INSERT_TEMP_SQL = "insert into member_id_tmp(member_id) values (?)";
+    private static final String CLEAR_TEMP_SQL = "delete from member_id_tmp";
+    private static final String JOIN_TEMP_SQL =
+            "select m.* from member m join member_id_tmp t on m.member_id = t.member_id";
+
+
+    static Member toMember(ResultSet rs) throws SQLException {
+        Member member = new Member();
+        member.setMemberId(rs.getString("member_id"));
+        member.setMoney(rs.getInt("money"));
+        member.setVersion(rs.getLong("version"));
+        return member;
+    }
+
+
+    /**
+     * 조회되지 않은 id는 결과 map에 들어있지 않다. (NoSuchElementException을 던지지 않는다.)
+     */
+    static Map<String, Member> findAllById(Connection conn, Collection<String> memberIds) throws SQLException {
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(memberIds));
+        Map<String, Member> result = new HashMap<>(ids.size() * 4 / 3 + 1);
+
+        if (ids.isEmpty()) {
+            return result;
+        }
+
+        if (ids.size() > TEMP_TABLE_THRESHOLD) {
+            findAllByTempTable(conn, ids, result);
+        } else {
+            findAllByInList(conn, ids, result);
+        }
+
+        if (result.size() < ids.size()) {
+            log.info("member not found count = {}", ids.size() - result.size());
+        }
+        return result;
+    }
+
+
+    private static void findAllByInList(Connection conn, List<String> ids, Map<String, Member> result) throws SQLException {
+        PreparedStatement[] statements = new PreparedStatement[IN_SQLS.length];
+
+        try {
+            for (int from = 0; from < ids.size(); from += MAX_IN_SIZE) {
+                List<String> chunk = ids.subList(from, Math.min(from + MAX_IN_SIZE, ids.size()));
+
+                int shape = shapeOf(chunk.size());
+                if (statements[shape] == null) {
+                    statements[shape] = conn.prepareStatement(IN_SQLS[shape]);
+                }
+                PreparedStatement pstmt = statements[shape];
+
+                // 남는 자리는 마지막 id로 채운다. IN 목록의 중복은 결과에 영향이 없다.
+                int size = 1 << shape;
+                for (int i = 0; i < size; i++) {
+                    pstmt.setString(i + 1, chunk.get(Math.min(i, chunk.size() - 1)));
+                }
+
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        Member member = toMember(rs);
+                        result.put(member.getMemberId(), member);
+                    }
+                }
+            }
+        } finally {
+            for (PreparedStatement pstmt : statements) {
+                JdbcUtils.closeStatement(pstmt);
+            }
+        }
+    }
+
+
+    private static void findAllByTempTable(Connection conn, List<String> ids, Map<String, Member> result) throws SQLException {
+        try (PreparedStatement create = conn.prepareStatement(CREATE_TEMP_SQL)) {
+            create.executeUpdate();
+        }
+
+        try {
+            clearTempTable(conn);
+
+            try (PreparedStatement insert = conn.prepareStatement(INSERT_TEMP_SQL)) {
+                for (int i = 0; i < ids.size(); i++) {
+                    insert.setString(1, ids.get(i));
+                    insert.addBatch();
+                    if ((i + 1) % MemberBatchSupport.DEFAULT_BATCH_SIZE == 0) {
+                        insert.executeBatch();
+                    }
+                }
+                insert.executeBatch();
+            }
+
+            try (PreparedStatement join = conn.prepareStatement(JOIN_TEMP_SQL);
+                 ResultSet rs = join.executeQuery()) {
+                while (rs.next()) {
+                    Member member = toMember(rs);
+                    result.put(member.getMemberId(), member);
+                }
+            }
+        } finally {
+            // 풀에 반납된 커넥션에 키가 남지 않도록 비운다.
+            clearTempTable(conn);
+        }
+    }
+
+    private static void clearTempTable(Connection conn) throws SQLException {
+        try (PreparedStatement clear = conn.prepareStatement(CLEAR_TEMP_SQL)) {
+            clear.executeUpdate();
+        }
+    }
+
+
+    /**
+     * 기본키 인덱스를 따라 마지막 memberId 다음부터 읽는다. OFFSET이 없으므로 몇 번째 페이지든 비용이 같다.
+     */
+    static MemberPage findPage(Connection conn, String pageToken, int pageSize) throws SQLException {
+        checkPageSize(pageSize);
+        String lastMemberId = MemberPage.decodeToken(pageToken);
+
+        try (PreparedStatement pstmt = conn.prepareStatement(lastMemberId == null ? FIRST_PAGE_SQL : NEXT_PAGE_SQL)) {
+            int index = 1;
+            if (lastMemberId != null) {
+                pstmt.setString(index++, lastMemberId);
+            }
+            pstmt.setInt(index, pageSize + 1);
+
+            List<Member> rows = new ArrayList<>(pageCapacity(pageSize));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(toMember(rs));
+                }
+            }
+            return MemberPage.of(rows, pageSize);
+        }
+    }
+
+
+    static int checkPageSize(int pageSize) {
+        if (pageSize <= 0 || pageSize > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("pageSize must be between 1 and " + MAX_PAGE_SIZE + ". pageSize = " + pageSize);
+        }
+        return pageSize;
+    }
+
+    static int pageCapacity(int pageSize) {
+        return Math.min(pageSize + 1, MAX_PAGE_CAPACITY);
+    }
+
+
+    /**
+     * member 테이블 전체를 순방향 전용 ResultSet으로 읽는 Stream
+     * fetchSize 만큼만 메모리에 올라오고, Stream.close() 할 때 ResultSet, Statement를 닫고 release를 호출한다.
+     * 반드시 try-with-resources로 닫아야 한다. 닫지 않으면 커넥션이 반납되지 않는다.
+     */
+    static Stream<Member> streamAll(Connection conn, int fetchSize,
+                                    Function<SQLException, RuntimeException> translator,
+                                    Runnable release) throws SQLException {
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            setLazy(conn, LAZY_ON_SQL);
+            pstmt = conn.prepareStatement(STREAM_SQL, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            pstmt.setFetchSize(fetchSize);
+            rs = pstmt.executeQuery();
+        } catch (SQLException | RuntimeException e) {
+            closeStream(conn, pstmt, rs, release);
+            throw e;
+        }
+
+        ResultSet cursor = rs;
+        PreparedStatement statement = pstmt;
+
+        Spliterator<Member> spliterator = new Spliterators.AbstractSpliterator<Member>(
+                Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super Member> action) {
+                try {
+                    if (!cursor.next()) {
+                        return false;
+                    }
+                    action.accept(toMember(cursor));
+                    return true;
+                } catch (SQLException e) {
+                    throw translator.apply(e);
+                }
+            }
+        };
+
+        return StreamSupport.stream(spliterator, false)
+                .onClose(() -> closeStream(conn, statement, cursor, release));
+    }
+
+    private static void closeStream(Connection conn, Statement stmt, ResultSet rs, Runnable release) {
+        JdbcUtils.closeResultSet(rs);
+        JdbcUtils.closeStatement(stmt);
+        try {
+            setLazy(conn, LAZY_OFF_SQL);
+        } catch (SQLException e) {
+            log.info("lazy query execution reset error ", e);
+        }
+        release.run();
+    }
+
+    private static void setLazy(Connection conn, String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+
+    /**
+     * size 이상인 가장 작은 2의 거듭제곱의 지수
+     */
+    static int shapeOf(int size) {
+        return size <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(size - 1);
+    }
+}
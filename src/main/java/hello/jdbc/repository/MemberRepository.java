@@ -3,14 +3,87 @@ package hello.jdbc.repository;
 import hello.jdbc.domain.Member;
 
 import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 public interface MemberRepository {
     Member save(Member member);
 
     Member findById(String memberId);
 
+    /**
+     * select ... for update
+     * 트랜잭션이 끝날 때까지 해당 행에 락을 건다. 여러 행을 잠글 때는 memberId 순서대로 호출해야 교착 상태가 생기지 않는다.
+     */
+    Member findByIdForUpdate(String memberId);
+
+    /**
+     * 여러 회원을 한 번에 조회한다. memberId를 key로 하는 map을 반환한다.
+     * 크기를 맞춘 IN 목록으로 나눠서 조회하고, 키가 아주 많으면 임시 테이블과 조인한다.
+     * 없는 회원은 map에 들어있지 않다.
+     */
+    Map<String, Member> findAllById(Collection<String> memberIds);
+
+    /**
+     * member 테이블 전체를 순방향 전용 커서로 조금씩 읽는다. 메모리는 fetchSize 만큼만 사용한다.
+     * 커넥션은 Stream이 열려 있는 동안만 사용하고 Stream.close()에서 반납하므로 try-with-resources로 사용한다.
+     *   try (Stream<Member> members = repository.streamAll()) { members.forEach(...); }
+     */
+    Stream<Member> streamAll();
+
+    /**
+     * keyset 페이징 (where member_id > ? order by member_id limit ?)
+     * 첫 페이지는 pageToken에 null을 넘기고, 다음 페이지는 이전 페이지의 nextToken을 넘긴다.
+     * pageSize는 1 ~ 10000 (그 밖이면 IllegalArgumentException)
+     */
+    MemberPage findPage(String pageToken, int pageSize);
+
     void update(String memberId, int money);
 
     void delete(String memberId);
 
+    /**
+     * 낙관적 락 (compare-and-set)
+     * update member set money = ?, version = version + 1 where member_id = ? and version = ?
+     * 조회한 뒤에 다른 곳에서 변경되었으면(또는 삭제되었으면) OptimisticLockingFailureException
+     */
+    void updateWithVersion(String memberId, int money, long version);
+
+    /**
+     * money = money + delta
+     * 조회 없이 데이터베이스에서 바로 계산한다. 대상 회원이 없으면 NoSuchElementException
+     */
+    void addMoney(String memberId, int delta);
+
+    /**
+     * money >= requiredMoney 인 경우에만 money = money + delta
+     * 변경된 행이 없으면 InsufficientMoneyException
+     */
+    void addMoney(String memberId, int delta, int requiredMoney);
+
+    /**
+     * 출금과 입금을 update 한 번으로 처리한다.
+     * 두 회원이 모두 있을 때만 두 행이 함께 변경되고, 아니면 아무것도 변경되지 않는다. (NoSuchElementException)
+     */
+    void transfer(String fromId, String toId, int money);
+
+    /**
+     * transfer + 출금 회원의 잔액 조건(money >= 이체금액)
+     * 변경된 행이 없으면 InsufficientMoneyException
+     */
+    void transferIfSufficient(String fromId, String toId, int money);
+
+    /**
+     * 배치 저장 / 수정 / 삭제
+     * batchSize 단위로 addBatch / executeBatch를 실행한다.
+     * 일부 행이 실패하면 MyBatchUpdateException에 성공한 id와 실패한 id별 예외를 담아서 던진다.
+     */
+    void saveAll(List<Member> members);
+
+    void updateAll(List<Member> members);
+
+    void deleteAll(Collection<String> memberIds);
+
 }
@@ -1,14 +1,22 @@
 package hello.jdbc.repository;
 
 import hello.jdbc.domain.Member;
+import hello.jdbc.repository.ex.InsufficientMoneyException;
 import hello.jdbc.repository.ex.MyDbException;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.jdbc.datasource.DataSourceUtils;
 import org.springframework.jdbc.support.JdbcUtils;
 
 import javax.sql.DataSource;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 
 /**
@@ -21,6 +29,8 @@ import java.util.NoSuchElementException;
 public class MemberRepositoryV4_1 implements MemberRepository {
 
     private final DataSource dataSource;
+    private int batchSize = MemberBatchSupport.DEFAULT_BATCH_SIZE;
+    private int fetchSize = MemberQueries.DEFAULT_FETCH_SIZE;
 
     public MemberRepositoryV4_1(DataSource dataSource) {
         this.dataSource = dataSource;
@@ -79,6 +89,7 @@ public class MemberRepositoryV4_1 implements MemberRepository {
                 Member member = new Member();
                 member.setMemberId(rs.getString("member_id"));
                 member.setMoney(rs.getInt("money"));
+                member.setVersion(rs.getLong("version"));
                 return member;
             } else {
                 throw new NoSuchElementException("member not fount memberId = " + memberId);
@@ -93,9 +104,90 @@ public class MemberRepositoryV4_1 implements MemberRepository {
     }
 
 
+    @Override
+    public Member findByIdForUpdate(String memberId) {
+        String sql = "select * from member where member_id = ? for update";
+
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+
+        try {
+            conn = getConnection();
+            pstmt = conn.prepareStatement(sql);
+            pstmt.setString(1, memberId);
+
+
+            rs = pstmt.executeQuery();
+
+            if (rs.next()) {
+                Member member = new Member();
+                member.setMemberId(rs.getString("member_id"));
+                member.setMoney(rs.getInt("money"));
+                member.setVersion(rs.getLong("version"));
+                return member;
+            } else {
+                throw new NoSuchElementException("member not fount memberId = " + memberId);
+            }
+
+
+        } catch (SQLException e) {
+            throw new MyDbException(e);
+        } finally {
+            close(conn, pstmt, rs);
+        }
+    }
+
+
+    @Override
+    public Map<String, Member> findAllById(Collection<String> memberIds) {
+        Connection conn = null;
+
+        try {
+            conn = getConnection();
+            return MemberQueries.findAllById(conn, memberIds);
+        } catch (SQLException e) {
+            throw new MyDbException(e);
+        } finally {
+            close(conn, null, null);
+        }
+    }
+
+
+    @Override
+    public Stream<Member> streamAll() {
+        Connection conn = null;
+
+        try {
+            conn = getConnection();
+            Connection streamConn = conn;
+            return MemberQueries.streamAll(conn, fetchSize, MyDbException::new,
+                    () -> close(streamConn, null, null));
+        } catch (SQLException e) {
+            throw new MyDbException(e);
+        }
+    }
+
+
+    @Override
+    public MemberPage findPage(String pageToken, int pageSize) {
+        Connection conn = null;
+
+        try {
+            conn = getConnection();
+            return MemberQueries.findPage(conn, pageToken, pageSize);
+        } catch (SQLException e) {
+            throw new MyDbException(e);
+        } finally {
+            close(conn, null, null);
+        }
+    }
+
+
     @Override
     public void update(String memberId, int money) {
-        String sql = "update member set money = ? where member_id = ?";
+        String sql = "update member set money = ?, version = version + 1 where member_id = ?";
 
         Connection conn = null;
         PreparedStatement pstmt = null;
@@ -118,6 +210,17 @@ public class MemberRepositoryV4_1 implements MemberRepository {
     }
 
 
+    @Override
+    public void updateWithVersion(String memberId, int money, long version) {
+        String sql = "update member set money = ?, version = version + 1 where member_id = ? and version = ?";
+
+        int resultSize = executeUpdate("updateWithVersion", sql, money, memberId, version);
+        if (resultSize <= 0) {
+            throw new OptimisticLockingFailureException("member version conflict memberId = " + memberId + ", version = " + version);
+        }
+    }
+
+
     @Override
     public void delete(String memberId) {
 
@@ -146,6 +249,178 @@ public class MemberRepositoryV4_1 implements MemberRepository {
 
 
 
+    @Override
+    public void addMoney(String memberId, int delta) {
+        String sql = "update member set money = money + ?, version = version + 1 where member_id = ?";
+
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+
+        try {
+            conn = getConnection();
+            pstmt = conn.prepareStatement(sql);
+
+            pstmt.setInt(1, delta);
+            pstmt.setString(2, memberId);
+
+            int resultSize = pstmt.executeUpdate();
+            if (resultSize <= 0) {
+                throw new NoSuchElementException("member not fount memberId = " + memberId);
+            }
+
+        } catch (SQLException e) {
+            throw new MyDbException(e);
+        } finally {
+            close(conn, pstmt, null);
+        }
+    }
+
+
+    @Override
+    public void addMoney(String memberId, int delta, int requiredMoney) {
+        String sql = "update member set money = money + ?, version = version + 1 where member_id = ? and money >= ?";
+
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+
+        try {
+            conn = getConnection();
+            pstmt = conn.prepareStatement(sql);
+
+            pstmt.setInt(1, delta);
+            pstmt.setString(2, memberId);
+            pstmt.setInt(3, requiredMoney);
+
+            int resultSize = pstmt.executeUpdate();
+            if (resultSize <= 0) {
+                throw new InsufficientMoneyException("insufficient money memberId = " + memberId + ", required = " + requiredMoney);
+            }
+
+        } catch (SQLException e) {
+            throw new MyDbException(e);
+        } finally {
+            close(conn, pstmt, null);
+        }
+    }
+
+
+    @Override
+    public void transfer(String fromId, String toId, int money) {
+        checkTransfer(fromId, toId);
+        String sql = "update member set money = case when member_id = ? then money - ? else money + ? end, version = version + 1" +
+                " where member_id in (?, ?)" +
+                " and (select count(*) from member where member_id in (?, ?)) = 2";
+
+        int resultSize = executeUpdate("transfer", sql, fromId, money, money, fromId, toId, fromId, toId);
+        if (resultSize < 2) {
+            throw new NoSuchElementException("member not fount memberId = " + fromId + ", " + toId);
+        }
+    }
+
+
+    @Override
+    public void transferIfSufficient(String fromId, String toId, int money) {
+        checkTransfer(fromId, toId);
+        String sql = "update member set money = case when member_id = ? then money - ? else money + ? end, version = version + 1" +
+                " where member_id in (?, ?)" +
+                " and (select count(*) from member where member_id in (?, ?)) = 2" +
+                " and (select money from member where member_id = ?) >= ?";
+
+        int resultSize = executeUpdate("transferIfSufficient", sql, fromId, money, money, fromId, toId, fromId, toId, fromId, money);
+        if (resultSize < 2) {
+            throw new InsufficientMoneyException("insufficient money or member not found fromId = " + fromId + ", toId = " + toId);
+        }
+    }
+
+
+    private void checkTransfer(String fromId, String toId) {
+        if (fromId.equals(toId)) {
+            throw new IllegalArgumentException("cannot transfer to the same member memberId = " + fromId);
+        }
+    }
+
+
+    private int executeUpdate(String task, String sql, Object... params) {
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+
+        try {
+            conn = getConnection();
+            pstmt = conn.prepareStatement(sql);
+
+            for (int i = 0; i < params.length; i++) {
+                pstmt.setObject(i + 1, params[i]);
+            }
+
+            int resultSize = pstmt.executeUpdate();
+            log.info("resultSize = {} ", resultSize);
+            return resultSize;
+
+        } catch (SQLException e) {
+            throw new MyDbException(e);
+        } finally {
+            close(conn, pstmt, null);
+        }
+    }
+
+
+    @Override
+    public void saveAll(List<Member> members) {
+        String sql = "insert into member(member_id, money) values (?, ?)";
+
+        executeBatch("saveAll", sql, false, members, Member::getMemberId, (pstmt, member) -> {
+            pstmt.setString(1, member.getMemberId());
+            pstmt.setInt(2, member.getMoney());
+        });
+    }
+
+
+    @Override
+    public void updateAll(List<Member> members) {
+        String sql = "update member set money = ?, version = version + 1 where member_id = ?";
+
+        executeBatch("updateAll", sql, true, members, Member::getMemberId, (pstmt, member) -> {
+            pstmt.setInt(1, member.getMoney());
+            pstmt.setString(2, member.getMemberId());
+        });
+    }
+
+
+    @Override
+    public void deleteAll(Collection<String> memberIds) {
+        String sql = "delete from member where member_id = ?";
+
+        executeBatch("deleteAll", sql, false, new ArrayList<>(memberIds), Function.identity(),
+                (pstmt, memberId) -> pstmt.setString(1, memberId));
+    }
+
+
+    private <T> void executeBatch(String task, String sql, boolean requireRow, List<T> items,
+                                  Function<T, String> idOf, MemberBatchSupport.Binder<T> binder) {
+        Connection conn = null;
+
+        try {
+            conn = getConnection();
+            MemberBatchSupport.execute(task, conn, sql, items, batchSize, requireRow, idOf, binder,
+                    MyDbException::new);
+        } catch (SQLException e) {
+            throw new MyDbException(e);
+        } finally {
+            close(conn, null, null);
+        }
+    }
+
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = MemberBatchSupport.checkBatchSize(batchSize);
+    }
+
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+
+
     // 이게 지금 tcp/ip에 걸려서 네트워크를 사용하고 있는건데, 이걸 안닫아주면
     // 계속 네트워크에 연결에 안끊어지고 유지가 될 수 있기 떄문에 닫아줘야 한다.
     private void close(Connection conn, Statement stmt, ResultSet rs) {
@@ -1,11 +1,24 @@
 package hello.jdbc.repository;
 
 import hello.jdbc.domain.Member;
+import hello.jdbc.repository.ex.InsufficientMoneyException;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DataSourceUtils;
 
 import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 
 /**
@@ -15,6 +28,8 @@ import javax.sql.DataSource;
 public class MemberRepositoryV5 implements MemberRepository {
 
     private final JdbcTemplate template;
+    private int batchSize = MemberBatchSupport.DEFAULT_BATCH_SIZE;
+    private int fetchSize = MemberQueries.DEFAULT_FETCH_SIZE;
 
     public MemberRepositoryV5(DataSource dataSource) {
         this.template = new JdbcTemplate(dataSource);
@@ -37,11 +52,59 @@ public class MemberRepositoryV5 implements MemberRepository {
         return member;
     }
 
+    @Override
+    public Member findByIdForUpdate(String memberId) {
+        String sql = "select * from member where member_id = ? for update";
+        return template.queryForObject(sql, memberRowMapper(), memberId);
+    }
+
+    @Override
+    public Map<String, Member> findAllById(Collection<String> memberIds) {
+        // 임시 테이블을 쓰는 경우 같은 커넥션에서 여러 문장을 실행해야 하므로 ConnectionCallback을 사용한다.
+        return template.execute((ConnectionCallback<Map<String, Member>>) conn -> MemberQueries.findAllById(conn, memberIds));
+    }
+
+    @Override
+    public MemberPage findPage(String pageToken, int pageSize) {
+        MemberQueries.checkPageSize(pageSize);
+        String lastMemberId = MemberPage.decodeToken(pageToken);
+
+        List<Member> rows;
+        if (lastMemberId == null) {
+            String sql = "select * from member order by member_id limit ?";
+            rows = template.query(sql, memberRowMapper(), pageSize + 1);
+        } else {
+            String sql = "select * from member where member_id > ? order by member_id limit ?";
+            rows = template.query(sql, memberRowMapper(), lastMemberId, pageSize + 1);
+        }
+        return MemberPage.of(rows, pageSize);
+    }
+
+    /**
+     * template.queryForStream은 커넥션을 반납한 뒤에야 onClose를 더 붙일 수 있어서
+     * lazy query execution을 되돌릴 수 없다. 그래서 DataSourceUtils로 직접 커넥션을 얻고,
+     * 예외 변환은 template의 SQLExceptionTranslator를 그대로 사용한다.
+     */
+    @Override
+    public Stream<Member> streamAll() {
+        DataSource dataSource = template.getDataSource();
+        Connection conn = DataSourceUtils.getConnection(dataSource);
+
+        try {
+            return MemberQueries.streamAll(conn, fetchSize,
+                    e -> template.getExceptionTranslator().translate("streamAll", null, e),
+                    () -> DataSourceUtils.releaseConnection(conn, dataSource));
+        } catch (SQLException e) {
+            throw template.getExceptionTranslator().translate("streamAll", null, e);
+        }
+    }
+
     private RowMapper<Member> memberRowMapper() {
         return (rs, rowNum) -> {
             Member member = new Member();
             member.setMemberId(rs.getString("member_id"));
             member.setMoney(rs.getInt("money"));
+            member.setVersion(rs.getLong("version"));
             return member;
         };
     }
@@ -49,12 +112,23 @@ public class MemberRepositoryV5 implements MemberRepository {
 
     @Override
     public void update(String memberId, int money) {
-        String sql = "update member set money = ? where member_id = ?";
+        String sql = "update member set money = ?, version = version + 1 where member_id = ?";
 
         template.update(sql, money, memberId);
     }
 
 
+    @Override
+    public void updateWithVersion(String memberId, int money, long version) {
+        String sql = "update member set money = ?, version = version + 1 where member_id = ? and version = ?";
+
+        int resultSize = template.update(sql, money, memberId, version);
+        if (resultSize <= 0) {
+            throw new OptimisticLockingFailureException("member version conflict memberId = " + memberId + ", version = " + version);
+        }
+    }
+
+
     @Override
     public void delete(String memberId) {
 
@@ -63,4 +137,118 @@ public class MemberRepositoryV5 implements MemberRepository {
         template.update(sql, memberId);
     }
 
+
+
+    @Override
+    public void addMoney(String memberId, int delta) {
+        String sql = "update member set money = money + ?, version = version + 1 where member_id = ?";
+
+        int resultSize = template.update(sql, delta, memberId);
+        if (resultSize <= 0) {
+            throw new NoSuchElementException("member not fount memberId = " + memberId);
+        }
+    }
+
+
+    @Override
+    public void addMoney(String memberId, int delta, int requiredMoney) {
+        String sql = "update member set money = money + ?, version = version + 1 where member_id = ? and money >= ?";
+
+        int resultSize = template.update(sql, delta, memberId, requiredMoney);
+        if (resultSize <= 0) {
+            throw new InsufficientMoneyException("insufficient money memberId = " + memberId + ", required = " + requiredMoney);
+        }
+    }
+
+
+    @Override
+    public void transfer(String fromId, String toId, int money) {
+        checkTransfer(fromId, toId);
+        String sql = "update member set money = case when member_id = ? then money - ? else money + ? end, version = version + 1" +
+                " where member_id in (?, ?)" +
+                " and (select count(*) from member where member_id in (?, ?)) = 2";
+
+        int resultSize = template.update(sql, fromId, money, money, fromId, toId, fromId, toId);
+        if (resultSize < 2) {
+            throw new NoSuchElementException("member not fount memberId = " + fromId + ", " + toId);
+        }
+    }
+
+
+    @Override
+    public void transferIfSufficient(String fromId, String toId, int money) {
+        checkTransfer(fromId, toId);
+        String sql = "update member set money = case when member_id = ? then money - ? else money + ? end, version = version + 1" +
+                " where member_id in (?, ?)" +
+                " and (select count(*) from member where member_id in (?, ?)) = 2" +
+                " and (select money from member where member_id = ?) >= ?";
+
+        int resultSize = template.update(sql, fromId, money, money, fromId, toId, fromId, toId, fromId, money);
+        if (resultSize < 2) {
+            throw new InsufficientMoneyException("insufficient money or member not found fromId = " + fromId + ", toId = " + toId);
+        }
+    }
+
+
+    private void checkTransfer(String fromId, String toId) {
+        if (fromId.equals(toId)) {
+            throw new IllegalArgumentException("cannot transfer to the same member memberId = " + fromId);
+        }
+    }
+
+
+    @Override
+    public void saveAll(List<Member> members) {
+        String sql = "insert into member(member_id, money) values (?, ?)";
+
+        batchUpdate("saveAll", sql, false, members, Member::getMemberId, (pstmt, member) -> {
+            pstmt.setString(1, member.getMemberId());
+            pstmt.setInt(2, member.getMoney());
+        });
+    }
+
+
+    @Override
+    public void updateAll(List<Member> members) {
+        String sql = "update member set money = ?, version = version + 1 where member_id = ?";
+
+        batchUpdate("updateAll", sql, true, members, Member::getMemberId, (pstmt, member) -> {
+            pstmt.setInt(1, member.getMoney());
+            pstmt.setString(2, member.getMemberId());
+        });
+    }
+
+
+    @Override
+    public void deleteAll(Collection<String> memberIds) {
+        String sql = "delete from member where member_id = ?";
+
+        batchUpdate("deleteAll", sql, false, new ArrayList<>(memberIds), Function.identity(),
+                (pstmt, memberId) -> pstmt.setString(1, memberId));
+    }
+
+
+    /**
+     * template.batchUpdate는 BatchUpdateException 대신 체인된 행의 SQLException을 변환하므로 어느 행이 실패했는지 알 수 없다.
+     * 그래서 ConnectionCallback으로 커넥션을 받아서 V4_x와 같이 MemberBatchSupport로 실행한다.
+     * 커넥션은 JdbcTemplate이 관리하므로 트랜잭션 안이면 그 트랜잭션의 커넥션을 쓴다.
+     */
+    private <T> void batchUpdate(String task, String sql, boolean requireRow, List<T> items,
+                                 Function<T, String> idOf, MemberBatchSupport.Binder<T> binder) {
+        template.execute((ConnectionCallback<Void>) conn -> {
+            MemberBatchSupport.execute(task, conn, sql, items, batchSize, requireRow, idOf, binder,
+                    e -> template.getExceptionTranslator().translate(task, sql, e));
+            return null;
+        });
+    }
+
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = MemberBatchSupport.checkBatchSize(batchSize);
+    }
+
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
 }
@@ -0,0 +1,193 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+
+/**
+ *  member 테이블 전체 조회 Publisher (java.util.concurrent.Flow)
+ *
+ *  구독자가 request(n)으로 요청한 만큼만 MemberRepository.streamAll()의 순방향 커서에서 읽어서 보낸다.
+ *  구독자가 느리면 커서를 더 읽지 않으므로 메모리에는 fetchSize 만큼만 올라온다.
+ *
+ *  - 첫 request에서 커서를 연다. (구독마다 커넥션 하나)
+ *  - 읽기는 executor에서 한 번에 최대 chunkSize 건씩 하고, 남은 요청이 있으면 다시 executor에 넘긴다.
+ *    executor는 크기가 정해진 풀을 쓴다. 동시에 열리는 커서 수가 스레드 수를 넘지 않도록 커넥션 풀보다 작게 둔다.
+ *  - 끝까지 읽거나, 오류가 나거나, cancel 하면 Stream.close()로 ResultSet, Statement를 닫고 커넥션을 반납한다.
+ *    (DataSourceUtils.releaseConnection)
+ *  - 구독자의 onNext가 예외를 던지면 cancel 한 것으로 보고 커서를 닫는다. onError는 부르지 않는다. (Reactive Streams 2.13)
+ */
+@Slf4j
+public class MemberScanPublisher implements Flow.Publisher<Member> {
+
+    private final MemberRepository memberRepository;
+    private final Executor executor;
+    private final int chunkSize;
+
+    public MemberScanPublisher(MemberRepository memberRepository, Executor executor, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        }
+        this.memberRepository = memberRepository;
+        this.executor = executor;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Member> subscriber) {
+        subscriber.onSubscribe(new ScanSubscription(subscriber));
+    }
+
+
+    private class ScanSubscription implements Flow.Subscription, Runnable {
+
+        private final Flow.Subscriber<? super Member> subscriber;
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile Throwable invalidRequest;
+
+        // drain 하는 스레드만 사용한다. (wip로 한 번에 하나만 실행된다)
+        private Stream<Member> stream;
+        private Iterator<Member> iterator;
+        private boolean terminated;
+
+        ScanSubscription(Flow.Subscriber<? super Member> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("request must be positive n = " + n);
+            } else {
+                requested.accumulateAndGet(n, (current, add) -> current + add < 0 ? Long.MAX_VALUE : current + add);
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            schedule();
+        }
+
+        private void schedule() {
+            if (wip.getAndIncrement() == 0) {
+                execute();
+            }
+        }
+
+        private void execute() {
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                cancelled = true;
+                close();
+                subscriber.onError(e);
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            do {
+                if (terminated) {
+                    return;
+                }
+                if (cancelled) {
+                    terminate();
+                    return;
+                }
+                if (invalidRequest != null) {
+                    terminate();
+                    subscriber.onError(invalidRequest);
+                    return;
+                }
+
+                try {
+                    if (drainChunk()) {
+                        // chunkSize 만큼 보냈고 요청이 남아 있으면 스레드를 양보하고 다시 실행한다.
+                        execute();
+                        return;
+                    }
+                } catch (RuntimeException e) {
+                    terminate();
+                    subscriber.onError(e);
+                    return;
+                }
+
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        /**
+         * @return 요청이 남아서 이어서 읽어야 하면 true
+         */
+        private boolean drainChunk() {
+            long demand = requested.get();
+            if (demand == 0) {
+                return false;
+            }
+            if (iterator == null) {
+                stream = memberRepository.streamAll();
+                iterator = stream.iterator();
+            }
+
+            long emitted = 0;
+            while (emitted < demand && emitted < chunkSize) {
+                if (cancelled) {
+                    return false;
+                }
+                if (!iterator.hasNext()) {
+                    terminate();
+                    try {
+                        subscriber.onComplete();
+                    } catch (RuntimeException e) {
+                        log.info("member scan subscriber onComplete error", e);
+                    }
+                    return false;
+                }
+                Member member = iterator.next();
+                try {
+                    subscriber.onNext(member);
+                } catch (RuntimeException e) {
+                    // 구독자의 예외는 cancel로 다룬다. 커서 오류가 아니므로 onError로 돌려보내지 않는다.
+                    log.info("member scan subscriber onNext error, cancelling", e);
+                    cancelled = true;
+                    terminate();
+                    return false;
+                }
+                emitted++;
+            }
+
+            long remaining = demand == Long.MAX_VALUE ? demand : requested.addAndGet(-emitted);
+            return remaining > 0;
+        }
+
+        private void terminate() {
+            terminated = true;
+            close();
+        }
+
+        private void close() {
+            if (stream != null) {
+                try {
+                    stream.close();
+                } catch (RuntimeException e) {
+                    log.info("member scan close error ", e);
+                }
+                stream = null;
+                iterator = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.ex.InsufficientMoneyException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+
+/**
+ *  인기 계좌 잔액 분할 (sharded balance)
+ *
+ *  입금이 몰리는 회원(shardedMemberIds)의 잔액을 member 행(base) + N개의 부분 잔액 행으로 나눈다.
+ *  부분 잔액은 member_balance_shard(member_id, shard, money) 테이블에 둔다. (schema.sql)
+ *
+ *  - 입금/출금(addMoney, transfer)은 임의의 shard 행 하나만 변경하므로 같은 행 락에 몰리지 않는다.
+ *  - 조회(findById 등)는 base + shard 합계를 money로 돌려준다.
+ *  - 잔액 조건이 있는 출금(addMoney(.., requiredMoney), transferIfSufficient)은 base와 모든 shard를 잠그고
+ *    합계로 검사한 뒤 base에서 뺀다. (base는 음수가 될 수 있고, 합계는 음수가 되지 않는다.)
+ *  - shard 변경은 version을 올리지 않는다. 분할된 회원의 updateWithVersion은 base와 모든 shard를 잠근 뒤
+ *    base의 version을 비교하고, base에 값을 쓰고 shard를 0으로 만든다.
+ *
+ *  MemberRepository 인터페이스를 그대로 구현하므로 MemberServiceV4는 바꿀 필요가 없다.
+ *  여러 문장으로 이뤄진 작업은 TransactionTemplate(REQUIRED)으로 묶어서 바깥 트랜잭션이 있으면 참여한다.
+ */
+@Slf4j
+public class ShardedBalanceMemberRepository implements MemberRepository {
+
+    public static final int DEFAULT_SHARD_COUNT = 8;
+
+    private final MemberRepository target;
+    private final JdbcTemplate template;
+    private final TransactionTemplate txTemplate;
+    private final Set<String> shardedMemberIds;
+    private final int shardCount;
+
+    public ShardedBalanceMemberRepository(MemberRepository target, DataSource dataSource,
+                                          PlatformTransactionManager transactionManager,
+                                          Set<String> shardedMemberIds, int shardCount) {
+        this.target = target;
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("shardCount must be positive. shardCount = " + shardCount);
+        }
+        this.template = new JdbcTemplate(dataSource);
+        this.txTemplate = new TransactionTemplate(transactionManager);
+        this.shardedMemberIds = Set.copyOf(shardedMemberIds);
+        this.shardCount = shardCount;
+    }
+
+
+    /**
+     * 분할 대상 회원의 shard 행을 만든다. 이미 있는 행은 그대로 둔다.
+     */
+    public void initShards() {
+        String sql = "insert into member_balance_shard(member_id, shard, money) select ?, ?, 0 from dual" +
+                " where not exists (select 1 from member_balance_shard where member_id = ? and shard = ?)";
+
+        List<Object[]> args = new ArrayList<>();
+        for (String memberId : shardedMemberIds) {
+            for (int shard = 0; shard < shardCount; shard++) {
+                args.add(new Object[]{memberId, shard, memberId, shard});
+            }
+        }
+        template.batchUpdate(sql, args);
+    }
+
+    public boolean isSharded(String memberId) {
+        return shardedMemberIds.contains(memberId);
+    }
+
+
+    @Override
+    public Member findById(String memberId) {
+        return withShards(target.findById(memberId));
+    }
+
+    @Override
+    public Member findByIdForUpdate(String memberId) {
+        Member member = target.findByIdForUpdate(memberId);
+        if (isSharded(memberId)) {
+            member.setMoney(member.getMoney() + lockShards(memberId));
+        }
+        return member;
+    }
+
+    @Override
+    public Map<String, Member> findAllById(Collection<String> memberIds) {
+        Map<String, Member> members = target.findAllById(memberIds);
+        members.values().forEach(this::withShards);
+        return members;
+    }
+
+    @Override
+    public Stream<Member> streamAll() {
+        return target.streamAll().map(this::withShards);
+    }
+
+    @Override
+    public MemberPage findPage(String pageToken, int pageSize) {
+        MemberPage page = target.findPage(pageToken, pageSize);
+        page.getMembers().forEach(this::withShards);
+        return page;
+    }
+
+
+    @Override
+    public Member save(Member member) {
+        return target.save(member);
+    }
+
+    @Override
+    public void saveAll(List<Member> members) {
+        target.saveAll(members);
+    }
+
+    /**
+     * 분할된 회원은 base에 값을 넣고 shard를 0으로 만든다.
+     */
+    @Override
+    public void update(String memberId, int money) {
+        if (!isSharded(memberId)) {
+            target.update(memberId, money);
+            return;
+        }
+
+        txTemplate.executeWithoutResult(status -> {
+            target.update(memberId, money);
+            template.update("update member_balance_shard set money = 0 where member_id = ?", memberId);
+        });
+    }
+
+    @Override
+    public void updateAll(List<Member> members) {
+        Map<Boolean, List<Member>> partitioned = members.stream()
+                .collect(Collectors.partitioningBy(member -> isSharded(member.getMemberId())));
+
+        txTemplate.executeWithoutResult(status -> {
+            if (!partitioned.get(false).isEmpty()) {
+                target.updateAll(partitioned.get(false));
+            }
+            partitioned.get(true).forEach(member -> update(member.getMemberId(), member.getMoney()));
+        });
+    }
+
+    /**
+     * 분할된 회원은 base와 모든 shard를 잠근 뒤 base의 version을 비교한다.
+     */
+    @Override
+    public void updateWithVersion(String memberId, int money, long version) {
+        if (!isSharded(memberId)) {
+            target.updateWithVersion(memberId, money, version);
+            return;
+        }
+
+        txTemplate.executeWithoutResult(status -> {
+            Member base = target.findByIdForUpdate(memberId);
+            lockShards(memberId);
+            if (base.getVersion() != version) {
+                throw new OptimisticLockingFailureException("member version conflict memberId = " + memberId + ", version = " + version);
+            }
+            target.updateWithVersion(memberId, money, version);
+            template.update("update member_balance_shard set money = 0 where member_id = ?", memberId);
+        });
+    }
+
+    @Override
+    public void delete(String memberId) {
+        if (!isSharded(memberId)) {
+            target.delete(memberId);
+            return;
+        }
+
+        txTemplate.executeWithoutResult(status -> {
+            template.update("delete from member_balance_shard where member_id = ?", memberId);
+            target.delete(memberId);
+        });
+    }
+
+    @Override
+    public void deleteAll(Collection<String> memberIds) {
+        txTemplate.executeWithoutResult(status -> {
+            for (String memberId : memberIds) {
+                if (isSharded(memberId)) {
+                    template.update("delete from member_balance_shard where member_id = ?", memberId);
+                }
+            }
+            target.deleteAll(memberIds);
+        });
+    }
+
+
+    @Override
+    public void addMoney(String memberId, int delta) {
+        if (!isSharded(memberId)) {
+            target.addMoney(memberId, delta);
+            return;
+        }
+        addToShard(memberId, delta);
+    }
+
+    @Override
+    public void addMoney(String memberId, int delta, int requiredMoney) {
+        if (!isSharded(memberId)) {
+            target.addMoney(memberId, delta, requiredMoney);
+            return;
+        }
+        txTemplate.executeWithoutResult(status -> addGuarded(memberId, delta, requiredMoney));
+    }
+
+    @Override
+    public void transfer(String fromId, String toId, int money) {
+        if (!isSharded(fromId) && !isSharded(toId)) {
+            target.transfer(fromId, toId, money);
+            return;
+        }
+        checkTransfer(fromId, toId);
+
+        txTemplate.executeWithoutResult(status -> {
+            addMoney(fromId, -money);
+            addMoney(toId, money);
+        });
+    }
+
+    @Override
+    public void transferIfSufficient(String fromId, String toId, int money) {
+        if (!isSharded(fromId) && !isSharded(toId)) {
+            target.transferIfSufficient(fromId, toId, money);
+            return;
+        }
+        checkTransfer(fromId, toId);
+
+        txTemplate.executeWithoutResult(status -> {
+            addMoney(fromId, -money, money);
+            addMoney(toId, money);
+        });
+    }
+
+
+    /**
+     * 임의의 shard 하나에 더한다. shard 행이 없으면(initShards 전) base에 더한다.
+     */
+    private void addToShard(String memberId, int delta) {
+        int shard = ThreadLocalRandom.current().nextInt(shardCount);
+        int resultSize = template.update(
+                "update member_balance_shard set money = money + ? where member_id = ? and shard = ?",
+                delta, memberId, shard);
+        if (resultSize <= 0) {
+            target.addMoney(memberId, delta);
+        }
+    }
+
+    /**
+     * base와 모든 shard를 잠그고 합계로 검사한다.
+     */
+    private void addGuarded(String memberId, int delta, int requiredMoney) {
+        Member base = target.findByIdForUpdate(memberId);
+        int total = base.getMoney() + lockShards(memberId);
+        if (total < requiredMoney) {
+            throw new InsufficientMoneyException("insufficient money memberId = " + memberId + ", required = " + requiredMoney);
+        }
+        target.addMoney(memberId, delta);
+    }
+
+    private int lockShards(String memberId) {
+        List<Integer> shards = template.queryForList(
+                "select money from member_balance_shard where member_id = ? for update", Integer.class, memberId);
+        return shards.stream().mapToInt(Integer::intValue).sum();
+    }
+
+    private Member withShards(Member member) {
+        if (isSharded(member.getMemberId())) {
+            Integer sum = template.queryForObject(
+                    "select coalesce(sum(money), 0) from member_balance_shard where member_id = ?",
+                    Integer.class, member.getMemberId());
+            member.setMoney(member.getMoney() + (sum == null ? 0 : sum));
+        }
+        return member;
+    }
+
+    private void checkTransfer(String fromId, String toId) {
+        if (fromId.equals(toId)) {
+            throw new IllegalArgumentException("cannot transfer to the same member memberId = " + fromId);
+        }
+    }
+}
@@ -0,0 +1,361 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.ex.MyBatchUpdateException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+
+/**
+ *  Unit of Work - 변경 감지 + 커밋 직전 배치 flush
+ *
+ *  트랜잭션 안에서 조회한 Member를 추적하고, update(memberId, money)는 바로 실행하지 않고 추적 중인 Member에만 반영한다.
+ *  같은 회원을 여러 번 변경해도 마지막 값만 남는다.
+ *  커밋 직전(beforeCommit)에 조회 시점과 money가 달라진 회원만 모아서 target.updateAll로 한 번에 보낸다.
+ *  롤백되면 아무것도 보내지 않는다.
+ *  REQUIRES_NEW 등으로 트랜잭션이 중단(suspend)되면 UnitOfWork도 같이 풀어 두었다가 재개(resume)될 때 다시 묶는다.
+ *  안쪽 트랜잭션의 변경은 안쪽 UnitOfWork에 모였다가 안쪽 커밋 직전에 안쪽 커넥션으로 보낸다.
+ *
+ *  그 외 쓰기(addMoney, transfer, delete 등)와 streamAll, findPage는 먼저 flush 하고 target을 호출한다.
+ *  조회하지 않은 회원의 update는 추적 대상과 따로 값만 모아두고 flush 때 보낸다. 그 회원이 없으면 flush가 NoSuchElementException으로 실패한다.
+ *  flush가 실패하면 MyBatchUpdateException이 아니라 실패한 행의 예외(SQLExceptionTranslator로 변환된 예외)를 그대로 던진다.
+ *  트랜잭션 밖에서는 target을 그대로 호출한다.
+ */
+@Slf4j
+public class UnitOfWorkMemberRepository implements MemberRepository {
+
+    private final MemberRepository target;
+
+    public UnitOfWorkMemberRepository(MemberRepository target) {
+        this.target = target;
+    }
+
+
+    @Override
+    public Member findById(String memberId) {
+        UnitOfWork uow = unitOfWork();
+        if (uow == null) {
+            return target.findById(memberId);
+        }
+
+        Member member = uow.tracked.get(memberId);
+        if (member == null) {
+            member = target.findById(memberId);
+            uow.load(member);
+        }
+        return member;
+    }
+
+    /**
+     * 먼저 flush 하고 락을 걸고 읽는다. 읽은 값으로 추적을 새로 시작한다.
+     */
+    @Override
+    public Member findByIdForUpdate(String memberId) {
+        UnitOfWork uow = flush();
+        Member member = target.findByIdForUpdate(memberId);
+        if (uow != null) {
+            uow.track(member);
+        }
+        return member;
+    }
+
+    @Override
+    public Map<String, Member> findAllById(Collection<String> memberIds) {
+        UnitOfWork uow = unitOfWork();
+        if (uow == null) {
+            return target.findAllById(memberIds);
+        }
+
+        Map<String, Member> result = new HashMap<>();
+        List<String> misses = new ArrayList<>();
+        for (String memberId : memberIds) {
+            Member member = uow.tracked.get(memberId);
+            if (member != null) {
+                result.put(memberId, member);
+            } else {
+                misses.add(memberId);
+            }
+        }
+
+        if (!misses.isEmpty()) {
+            Map<String, Member> loaded = target.findAllById(misses);
+            loaded.values().forEach(uow::load);
+            result.putAll(loaded);
+        }
+        return result;
+    }
+
+    @Override
+    public Stream<Member> streamAll() {
+        flush();
+        return target.streamAll();
+    }
+
+    @Override
+    public MemberPage findPage(String pageToken, int pageSize) {
+        flush();
+        return target.findPage(pageToken, pageSize);
+    }
+
+
+    /**
+     * 바로 실행하지 않고 커밋 직전에 flush 한다.
+     * 조회하지 않은 회원이면 값만 기록해두고 flush 때 무조건 update 한다. (그 사이에 조회하면 조회한 Member에 반영한다.)
+     */
+    @Override
+    public void update(String memberId, int money) {
+        UnitOfWork uow = unitOfWork();
+        if (uow == null) {
+            target.update(memberId, money);
+            return;
+        }
+
+        Member member = uow.tracked.get(memberId);
+        if (member != null) {
+            member.setMoney(money);
+        } else {
+            uow.pendingUpdates.put(memberId, money);
+        }
+    }
+
+    @Override
+    public void updateAll(List<Member> members) {
+        UnitOfWork uow = unitOfWork();
+        if (uow == null) {
+            target.updateAll(members);
+            return;
+        }
+        members.forEach(member -> update(member.getMemberId(), member.getMoney()));
+    }
+
+    @Override
+    public Member save(Member member) {
+        UnitOfWork uow = flush();
+        Member saved = target.save(member);
+        if (uow != null) {
+            uow.track(saved);
+        }
+        return saved;
+    }
+
+    @Override
+    public void saveAll(List<Member> members) {
+        UnitOfWork uow = flush();
+        target.saveAll(members);
+        if (uow != null) {
+            members.forEach(uow::track);
+        }
+    }
+
+    /**
+     * 조회 시점의 version과 비교해야 하므로 모아두지 않고 flush 후 바로 실행한다.
+     */
+    @Override
+    public void updateWithVersion(String memberId, int money, long version) {
+        UnitOfWork uow = flush();
+        target.updateWithVersion(memberId, money, version);
+        if (uow != null) {
+            uow.updated(memberId, money, version + 1);
+        }
+    }
+
+    @Override
+    public void delete(String memberId) {
+        UnitOfWork uow = flush();
+        target.delete(memberId);
+        if (uow != null) {
+            uow.untrack(memberId);
+        }
+    }
+
+    @Override
+    public void deleteAll(Collection<String> memberIds) {
+        UnitOfWork uow = flush();
+        target.deleteAll(memberIds);
+        if (uow != null) {
+            memberIds.forEach(uow::untrack);
+        }
+    }
+
+    @Override
+    public void addMoney(String memberId, int delta) {
+        UnitOfWork uow = flush();
+        target.addMoney(memberId, delta);
+        if (uow != null) {
+            uow.applied(memberId, delta);
+        }
+    }
+
+    @Override
+    public void addMoney(String memberId, int delta, int requiredMoney) {
+        UnitOfWork uow = flush();
+        target.addMoney(memberId, delta, requiredMoney);
+        if (uow != null) {
+            uow.applied(memberId, delta);
+        }
+    }
+
+    @Override
+    public void transfer(String fromId, String toId, int money) {
+        UnitOfWork uow = flush();
+        target.transfer(fromId, toId, money);
+        if (uow != null) {
+            uow.applied(fromId, -money);
+            uow.applied(toId, money);
+        }
+    }
+
+    @Override
+    public void transferIfSufficient(String fromId, String toId, int money) {
+        UnitOfWork uow = flush();
+        target.transferIfSufficient(fromId, toId, money);
+        if (uow != null) {
+            uow.applied(fromId, -money);
+            uow.applied(toId, money);
+        }
+    }
+
+
+    /**
+     * 트랜잭션이 없으면 아무것도 하지 않고 null을 반환한다.
+     */
+    private UnitOfWork flush() {
+        UnitOfWork uow = unitOfWork();
+        if (uow != null) {
+            uow.flush();
+        }
+        return uow;
+    }
+
+    private UnitOfWork unitOfWork() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return null;
+        }
+
+        UnitOfWork uow = (UnitOfWork) TransactionSynchronizationManager.getResource(this);
+        if (uow != null) {
+            return uow;
+        }
+
+        UnitOfWork newUow = new UnitOfWork();
+        TransactionSynchronizationManager.bindResource(this, newUow);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void suspend() {
+                TransactionSynchronizationManager.unbindResource(UnitOfWorkMemberRepository.this);
+            }
+
+            @Override
+            public void resume() {
+                TransactionSynchronizationManager.bindResource(UnitOfWorkMemberRepository.this, newUow);
+            }
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                newUow.flush();
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(UnitOfWorkMemberRepository.this);
+            }
+        });
+        return newUow;
+    }
+
+
+    private class UnitOfWork {
+
+        // 추적 중인 Member
+        private final Map<String, Member> tracked = new HashMap<>();
+        // 데이터베이스에 반영된 money
+        private final Map<String, Integer> snapshots = new HashMap<>();
+        // 조회하지 않은 회원의 update 값
+        private final Map<String, Integer> pendingUpdates = new HashMap<>();
+
+        void track(Member member) {
+            tracked.put(member.getMemberId(), member);
+            snapshots.put(member.getMemberId(), member.getMoney());
+            pendingUpdates.remove(member.getMemberId());
+        }
+
+        /**
+         * 조회한 Member를 추적한다. 먼저 들어온 update가 있으면 조회한 값 위에 반영한다. (flush 대상)
+         */
+        void load(Member member) {
+            Integer pending = pendingUpdates.get(member.getMemberId());
+            track(member);
+            if (pending != null) {
+                member.setMoney(pending);
+            }
+        }
+
+        void untrack(String memberId) {
+            tracked.remove(memberId);
+            snapshots.remove(memberId);
+            pendingUpdates.remove(memberId);
+        }
+
+        /**
+         * 데이터베이스에 바로 반영된 값으로 추적 중인 인스턴스를 맞춘다. 추적 중이 아니면 새로 추적한다.
+         */
+        void updated(String memberId, int money, long version) {
+            Member member = tracked.get(memberId);
+            if (member == null) {
+                track(new Member(memberId, money, version));
+                return;
+            }
+            member.setMoney(money);
+            member.setVersion(version);
+            snapshots.put(memberId, money);
+        }
+
+        /**
+         * 데이터베이스에서 직접 delta 만큼 바뀐 경우 추적 중인 값과 스냅샷을 같이 맞춘다.
+         */
+        void applied(String memberId, int delta) {
+            Member member = tracked.get(memberId);
+            if (member != null) {
+                member.setMoney(member.getMoney() + delta);
+                member.setVersion(member.getVersion() + 1);
+                snapshots.put(memberId, member.getMoney());
+            }
+        }
+
+        void flush() {
+            List<Member> dirty = new ArrayList<>();
+            for (Member member : tracked.values()) {
+                if (snapshots.get(member.getMemberId()) != member.getMoney()) {
+                    dirty.add(new Member(member.getMemberId(), member.getMoney()));
+                }
+            }
+            pendingUpdates.forEach((memberId, money) -> dirty.add(new Member(memberId, money)));
+            if (dirty.isEmpty()) {
+                return;
+            }
+
+            log.info("flush dirty members = {}", dirty.size());
+            try {
+                target.updateAll(dirty);
+            } catch (MyBatchUpdateException e) {
+                throw e.getFailures().values().iterator().next();
+            }
+            pendingUpdates.clear();
+            for (Member member : dirty) {
+                Member trackedMember = tracked.get(member.getMemberId());
+                if (trackedMember != null) {
+                    snapshots.put(member.getMemberId(), member.getMoney());
+                    trackedMember.setVersion(trackedMember.getVersion() + 1);
+                }
+            }
+        }
+    }
+}
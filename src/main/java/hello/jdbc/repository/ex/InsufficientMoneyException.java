@@ -0,0 +1,23 @@
+package hello.jdbc.repository.ex;
+
+/**
+ * 잔액 조건(money >= ?)을 만족하지 못해서 변경된 행이 없을 때 던진다.
+ */
+public class InsufficientMoneyException extends RuntimeException {
+
+    public InsufficientMoneyException() {
+    }
+
+    public InsufficientMoneyException(String message) {
+        super(message);
+    }
+
+    public InsufficientMoneyException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public InsufficientMoneyException(Throwable cause) {
+        super(cause);
+    }
+
+}
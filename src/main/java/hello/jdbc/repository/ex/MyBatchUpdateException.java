@@ -0,0 +1,30 @@
+package hello.jdbc.repository.ex;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 배치 처리 중 일부 행이 실패했을 때 던진다.
+ * 성공한 memberId와, 실패한 memberId 별로 변환된 예외를 함께 담는다.
+ */
+public class MyBatchUpdateException extends MyDbException {
+
+    private final List<String> succeededIds;
+    private final Map<String, RuntimeException> failures;
+
+    public MyBatchUpdateException(String task, List<String> succeededIds, Map<String, RuntimeException> failures) {
+        super(task + " batch failed: succeeded = " + succeededIds.size() + ", failed = " + failures.keySet());
+        this.succeededIds = Collections.unmodifiableList(succeededIds);
+        this.failures = Collections.unmodifiableMap(failures);
+    }
+
+    public List<String> getSucceededIds() {
+        return succeededIds;
+    }
+
+    public Map<String, RuntimeException> getFailures() {
+        return failures;
+    }
+
+}
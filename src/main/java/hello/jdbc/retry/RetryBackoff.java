@@ -0,0 +1,43 @@
+package hello.jdbc.retry;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+
+/**
+ *  지수 백오프 + full jitter
+ *  attempt번째 재시도 전 대기 시간 = random(0, min(maxMillis, initialMillis * multiplier^(attempt-1)))
+ *  여러 스레드가 같은 순간에 다시 부딪히지 않도록 대기 시간을 흩뜨린다.
+ */
+public class RetryBackoff {
+
+    private final long initialMillis;
+    private final long maxMillis;
+    private final double multiplier;
+
+    public RetryBackoff(long initialMillis, long maxMillis, double multiplier) {
+        if (initialMillis <= 0 || maxMillis < initialMillis || multiplier < 1) {
+            throw new IllegalArgumentException("invalid backoff initial = " + initialMillis
+                    + ", max = " + maxMillis + ", multiplier = " + multiplier);
+        }
+        this.initialMillis = initialMillis;
+        this.maxMillis = maxMillis;
+        this.multiplier = multiplier;
+    }
+
+    public long delayMillis(int attempt) {
+        double ceiling = Math.min(maxMillis, initialMillis * Math.pow(multiplier, Math.max(0, attempt - 1)));
+        return ThreadLocalRandom.current().nextLong((long) ceiling + 1);
+    }
+
+    /**
+     * 인터럽트되면 인터럽트 상태를 복구하고 IllegalStateException을 던진다.
+     */
+    public void sleep(int attempt) {
+        try {
+            Thread.sleep(delayMillis(attempt));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("retry interrupted", e);
+        }
+    }
+}
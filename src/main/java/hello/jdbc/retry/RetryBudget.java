@@ -0,0 +1,43 @@
+package hello.jdbc.retry;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ *  연산(메서드) 단위 재시도 예산 (token bucket)
+ *  소수점 적립을 위해 1토큰을 1000으로 저장한다.
+ */
+class RetryBudget {
+
+    private static final long SCALE = 1000;
+
+    private final long depositPerCall;
+    private final long maxTokens;
+    private final AtomicLong tokens;
+
+    RetryBudget(double ratio, int maxTokens) {
+        this.depositPerCall = Math.round(ratio * SCALE);
+        this.maxTokens = maxTokens * SCALE;
+        this.tokens = new AtomicLong(this.maxTokens);
+    }
+
+    void deposit() {
+        tokens.getAndUpdate(current -> Math.min(maxTokens, current + depositPerCall));
+    }
+
+    boolean tryWithdraw() {
+        while (true) {
+            long current = tokens.get();
+            if (current < SCALE) {
+                return false;
+            }
+            if (tokens.compareAndSet(current, current - SCALE)) {
+                return true;
+            }
+        }
+    }
+
+    double available() {
+        return (double) tokens.get() / SCALE;
+    }
+}
@@ -0,0 +1,74 @@
+package hello.jdbc.retry;
+
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ *  연산(메서드) 단위 재시도 지표
+ */
+public class RetryMetrics {
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder recovered = new LongAdder();
+    private final LongAdder exhausted = new LongAdder();
+    private final LongAdder budgetRejected = new LongAdder();
+
+    void call() {
+        calls.increment();
+    }
+
+    void retry() {
+        retries.increment();
+    }
+
+    void recovered() {
+        recovered.increment();
+    }
+
+    void exhausted() {
+        exhausted.increment();
+    }
+
+    void budgetRejected() {
+        budgetRejected.increment();
+    }
+
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    /**
+     * 재시도한 횟수
+     */
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    /**
+     * 재시도 끝에 성공한 호출 수
+     */
+    public long getRecovered() {
+        return recovered.sum();
+    }
+
+    /**
+     * maxAttempts를 다 쓰고 실패한 호출 수
+     */
+    public long getExhausted() {
+        return exhausted.sum();
+    }
+
+    /**
+     * 예산이 없어서 재시도하지 못한 호출 수
+     */
+    public long getBudgetRejected() {
+        return budgetRejected.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "RetryMetrics{calls=" + getCalls() + ", retries=" + getRetries() + ", recovered=" + getRecovered()
+                + ", exhausted=" + getExhausted() + ", budgetRejected=" + getBudgetRejected() + "}";
+    }
+}
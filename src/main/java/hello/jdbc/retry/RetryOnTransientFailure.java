@@ -0,0 +1,44 @@
+package hello.jdbc.retry;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+
+/**
+ *  일시적인 데이터 접근 실패 시 메서드 전체를 다시 실행한다.
+ *
+ *  TransientDataAccessException(CannotAcquireLockException, DeadlockLoserDataAccessException 등)만 재시도하고,
+ *  DuplicateKeyException 같은 NonTransient 예외는 바로 던진다.
+ *  @Transactional과 같이 사용하면 트랜잭션 바깥에서 동작하므로 롤백된 트랜잭션 전체를 새로 실행한다.
+ *  TransientRetryConfig를 @Import 해야 동작한다.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface RetryOnTransientFailure {
+
+    /**
+     * 처음 실행을 포함한 최대 실행 횟수
+     */
+    int maxAttempts() default 3;
+
+    long initialBackoffMillis() default 10;
+
+    long maxBackoffMillis() default 500;
+
+    double multiplier() default 2.0;
+
+    /**
+     * 재시도 예산 - 호출 1번마다 budgetRatio 만큼 적립되고 재시도 1번마다 1씩 쓴다.
+     * 0.2면 평소 호출량의 20% 까지만 재시도한다. 장애 상황에서 재시도가 부하를 키우는 것을 막는다.
+     */
+    double budgetRatio() default 0.2;
+
+    /**
+     * 예산 최대 적립량 (처음에는 가득 찬 상태로 시작한다.)
+     */
+    int budgetMaxTokens() default 10;
+}
@@ -0,0 +1,37 @@
+package hello.jdbc.retry;
+
+import org.springframework.aop.Advisor;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Role;
+import org.springframework.core.Ordered;
+
+
+/**
+ *  @RetryOnTransientFailure 설정
+ *  필요한 곳에서 @Import(TransientRetryConfig.class)로 사용한다.
+ *
+ *  - 트랜잭션 어드바이저(기본 순서 LOWEST_PRECEDENCE)보다 먼저 실행되도록 HIGHEST_PRECEDENCE로 지정한다.
+ *    그래야 재시도할 때마다 새 트랜잭션이 시작된다.
+ *  - 스프링 부트는 aspectj가 없으면 InfrastructureAdvisorAutoProxyCreator를 사용하므로
+ *    어드바이저를 ROLE_INFRASTRUCTURE로 등록해야 프록시에 적용된다.
+ */
+public class TransientRetryConfig {
+
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public TransientRetryInterceptor transientRetryInterceptor() {
+        return new TransientRetryInterceptor();
+    }
+
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public Advisor transientRetryAdvisor(TransientRetryInterceptor transientRetryInterceptor) {
+        DefaultPointcutAdvisor advisor = new DefaultPointcutAdvisor(
+                AnnotationMatchingPointcut.forMethodAnnotation(RetryOnTransientFailure.class), transientRetryInterceptor);
+        advisor.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return advisor;
+    }
+}
@@ -0,0 +1,127 @@
+package hello.jdbc.retry;
+
+import lombok.extern.slf4j.Slf4j;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.ProxyMethodInvocation;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ *  @RetryOnTransientFailure 인터셉터
+ *
+ *  트랜잭션 인터셉터보다 바깥에 있어야 한다. (TransientRetryConfig에서 순서를 지정한다.)
+ *  이미 트랜잭션이 진행 중이면 재시도하지 않는다. 바깥 트랜잭션의 일부만 다시 실행할 수는 없기 때문이다.
+ */
+@Slf4j
+public class TransientRetryInterceptor implements MethodInterceptor {
+
+    private final Map<Method, Policy> policies = new ConcurrentHashMap<>();
+    private final Map<String, RetryMetrics> metrics = new ConcurrentHashMap<>();
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return invocation.proceed();
+        }
+
+        Policy policy = policies.computeIfAbsent(invocation.getMethod(), method -> policyOf(invocation));
+        if (policy == null) {
+            return invocation.proceed();
+        }
+
+        RetryMetrics operationMetrics = metrics.computeIfAbsent(policy.operation, operation -> new RetryMetrics());
+        operationMetrics.call();
+        policy.budget.deposit();
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                Object result = proceed(invocation);
+                if (attempt > 1) {
+                    operationMetrics.recovered();
+                }
+                return result;
+            } catch (Throwable e) {
+                if (!isRetryable(e)) {
+                    throw e;
+                }
+                if (attempt >= policy.annotation.maxAttempts()) {
+                    operationMetrics.exhausted();
+                    log.info("[{}] retry exhausted attempts = {}", policy.operation, attempt);
+                    throw e;
+                }
+                if (!policy.budget.tryWithdraw()) {
+                    operationMetrics.budgetRejected();
+                    log.info("[{}] retry budget exhausted", policy.operation);
+                    throw e;
+                }
+
+                operationMetrics.retry();
+                log.info("[{}] transient failure, retry attempt = {}, cause = {}", policy.operation, attempt, e.toString());
+                policy.backoff.sleep(attempt);
+            }
+        }
+    }
+
+    public Map<String, RetryMetrics> getMetrics() {
+        return Collections.unmodifiableMap(metrics);
+    }
+
+    public RetryMetrics getMetrics(String operation) {
+        return metrics.get(operation);
+    }
+
+
+    /**
+     * DuplicateKeyException 등 NonTransientDataAccessException은 TransientDataAccessException이 아니므로 재시도하지 않는다.
+     */
+    static boolean isRetryable(Throwable e) {
+        return e instanceof TransientDataAccessException;
+    }
+
+    /**
+     * MethodInvocation.proceed()는 한 번만 호출할 수 있으므로 재시도마다 복사본으로 실행한다.
+     */
+    private Object proceed(MethodInvocation invocation) throws Throwable {
+        if (invocation instanceof ProxyMethodInvocation) {
+            return ((ProxyMethodInvocation) invocation).invocableClone().proceed();
+        }
+        return invocation.proceed();
+    }
+
+    private Policy policyOf(MethodInvocation invocation) {
+        Class<?> targetClass = invocation.getThis() == null ? null : AopUtils.getTargetClass(invocation.getThis());
+        Method method = AopUtils.getMostSpecificMethod(invocation.getMethod(), targetClass);
+
+        RetryOnTransientFailure annotation = AnnotatedElementUtils.findMergedAnnotation(method, RetryOnTransientFailure.class);
+        if (annotation == null) {
+            return null;
+        }
+        String operation = method.getDeclaringClass().getSimpleName() + "." + method.getName();
+        return new Policy(operation, annotation);
+    }
+
+
+    private static class Policy {
+
+        private final String operation;
+        private final RetryOnTransientFailure annotation;
+        private final RetryBackoff backoff;
+        private final RetryBudget budget;
+
+        Policy(String operation, RetryOnTransientFailure annotation) {
+            this.operation = operation;
+            this.annotation = annotation;
+            this.backoff = new RetryBackoff(annotation.initialBackoffMillis(), annotation.maxBackoffMillis(), annotation.multiplier());
+            this.budget = new RetryBudget(annotation.budgetRatio(), annotation.budgetMaxTokens());
+        }
+    }
+}
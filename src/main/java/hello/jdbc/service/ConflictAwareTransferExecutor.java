@@ -0,0 +1,153 @@
+package hello.jdbc.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ *  충돌 인식 병렬 일괄 이체
+ *
+ *  같은 회원이 들어간 이체끼리 union-find로 묶으면 그룹 사이에는 공유하는 회원이 없다.
+ *  그룹은 스레드 풀에서 병렬로 (각자 풀의 커넥션으로) 실행하고, 그룹 안의 이체는 원래 순서대로 하나씩 실행한다.
+ *  서로 다른 그룹은 같은 행을 잠그지 않으므로 교착 상태가 생기지 않는다.
+ *
+ *  이체 한 건은 memberService.accountTransfer 한 번 (트랜잭션 하나)이다.
+ *  스레드 수는 커넥션 풀 크기 이하로 둔다.
+ */
+@Slf4j
+public class ConflictAwareTransferExecutor implements AutoCloseable {
+
+    private final MemberServiceV4 memberService;
+    private final ExecutorService executor;
+
+    public ConflictAwareTransferExecutor(MemberServiceV4 memberService, int parallelism) {
+        this.memberService = memberService;
+        AtomicInteger sequence = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "transfer-group-" + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+
+    /**
+     * @return transfers와 같은 순서의 처리 결과
+     */
+    public List<TransferResult> execute(List<Transfer> transfers) {
+        List<List<Integer>> groups = partition(transfers);
+        log.info("transfers = {}, groups = {}", transfers.size(), groups.size());
+
+        TransferResult[] results = new TransferResult[transfers.size()];
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[groups.size()];
+        for (int g = 0; g < groups.size(); g++) {
+            List<Integer> group = groups.get(g);
+            futures[g] = CompletableFuture.runAsync(() -> {
+                for (int position : group) {
+                    results[position] = transfer(transfers.get(position));
+                }
+            }, executor);
+        }
+        CompletableFuture.allOf(futures).join();
+
+        return Arrays.asList(results);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    private TransferResult transfer(Transfer transfer) {
+        try {
+            memberService.accountTransfer(transfer.getFromId(), transfer.getToId(), transfer.getMoney());
+            return TransferResult.success(transfer);
+        } catch (RuntimeException e) {
+            return TransferResult.failure(transfer, e);
+        }
+    }
+
+    /**
+     * 회원을 공유하는 이체끼리 묶는다. 그룹 안의 이체 위치는 원래 순서를 따른다.
+     */
+    static List<List<Integer>> partition(List<Transfer> transfers) {
+        MemberIdIndex index = new MemberIdIndex(transfers.size() * 2);
+        int[] from = new int[transfers.size()];
+        int[] to = new int[transfers.size()];
+        for (int i = 0; i < transfers.size(); i++) {
+            from[i] = index.indexOf(transfers.get(i).getFromId());
+            to[i] = index.indexOf(transfers.get(i).getToId());
+        }
+
+        UnionFind unionFind = new UnionFind(index.size());
+        for (int i = 0; i < transfers.size(); i++) {
+            unionFind.union(from[i], to[i]);
+        }
+
+        int[] groupOfRoot = new int[index.size()];
+        Arrays.fill(groupOfRoot, -1);
+        List<List<Integer>> groups = new ArrayList<>();
+        for (int i = 0; i < transfers.size(); i++) {
+            int root = unionFind.find(from[i]);
+            if (groupOfRoot[root] < 0) {
+                groupOfRoot[root] = groups.size();
+                groups.add(new ArrayList<>());
+            }
+            groups.get(groupOfRoot[root]).add(i);
+        }
+        return groups;
+    }
+
+
+    private static class UnionFind {
+
+        private final int[] parent;
+        private final int[] size;
+
+        UnionFind(int n) {
+            parent = new int[n];
+            size = new int[n];
+            for (int i = 0; i < n; i++) {
+                parent[i] = i;
+                size[i] = 1;
+            }
+        }
+
+        int find(int x) {
+            while (parent[x] != x) {
+                parent[x] = parent[parent[x]];
+                x = parent[x];
+            }
+            return x;
+        }
+
+        void union(int a, int b) {
+            int rootA = find(a);
+            int rootB = find(b);
+            if (rootA == rootB) {
+                return;
+            }
+            if (size[rootA] < size[rootB]) {
+                int tmp = rootA;
+                rootA = rootB;
+                rootB = tmp;
+            }
+            parent[rootB] = rootA;
+            size[rootA] += size[rootB];
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package hello.jdbc.service;
+
+import hello.jdbc.repository.MemberRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+
+/**
+ *  그룹 커밋 이체 파이프라인
+ *
+ *  submit 한 이체는 크기가 정해진 큐에 쌓이고, 쓰기 스레드 하나가 큐에서 여러 건을 꺼내 한 트랜잭션(그룹)으로 커밋한다.
+ *  커밋 비용을 그룹 안의 이체들이 나눠 낸다.
+ *
+ *  - 이체마다 savepoint를 만들어서 실패한 이체는 그 이체만 롤백된다.
+ *  - 호출자의 CompletableFuture는 그룹이 커밋된 뒤에 완료된다. 커밋이 실패하면 그룹의 이체가 모두 실패한다.
+ *  - 큐가 가득 차면 offerTimeoutMillis 만큼 기다린 뒤 RejectedExecutionException (backpressure)
+ *  - 그룹 크기는 커밋 시간을 보고 조정한다. targetCommitMillis 이하면 1씩 늘리고, 넘으면 절반으로 줄인다. (AIMD)
+ *    커밋 시간은 그룹의 마지막 이체가 끝난 뒤부터 트랜잭션이 끝날 때까지만 잰다. (이체 실행 시간은 빼고)
+ *  - close 이후의 submit은 RejectedExecutionException. close와 동시에 들어온 이체도 큐에 남지 않고
+ *    커밋되거나 RejectedExecutionException으로 완료된다.
+ *  - 쓰기 스레드가 Error 등으로 끝나면 처리 중이던 그룹은 그 예외로, 큐에 남은 이체는 RejectedExecutionException으로
+ *    완료하고 이후의 submit은 거절한다.
+ */
+@Slf4j
+public class GroupCommitTransferPipeline implements AutoCloseable {
+
+    private final MemberRepository memberRepository;
+    private final TransactionTemplate txTemplate;
+    private final BlockingQueue<QueuedTransfer> queue;
+    private final long offerTimeoutMillis;
+
+    private final int minGroupSize;
+    private final int maxGroupSize;
+    private final long targetCommitNanos;
+    private volatile int groupSize;
+
+    private final Thread writer;
+    private final ReentrantReadWriteLock closeLock = new ReentrantReadWriteLock();
+    private volatile boolean running = true;
+
+    public GroupCommitTransferPipeline(MemberRepository memberRepository, PlatformTransactionManager transactionManager,
+                                       int queueCapacity, long offerTimeoutMillis,
+                                       int minGroupSize, int maxGroupSize, long targetCommitMillis) {
+        this.memberRepository = memberRepository;
+        this.txTemplate = new TransactionTemplate(transactionManager);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.offerTimeoutMillis = offerTimeoutMillis;
+        this.minGroupSize = minGroupSize;
+        this.maxGroupSize = maxGroupSize;
+        this.targetCommitNanos = TimeUnit.MILLISECONDS.toNanos(targetCommitMillis);
+        this.groupSize = minGroupSize;
+
+        this.writer = new Thread(this::writeLoop, "group-commit-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+
+    /**
+     * running 확인과 큐에 넣는 것을 읽기 락으로 묶는다. close는 쓰기 락을 잡고 running을 바꾸므로
+     * 쓰기 스레드가 종료를 판단한 뒤에 큐에 들어오는 이체는 없다.
+     */
+    public CompletableFuture<Void> submit(String fromId, String toId, int money) {
+        QueuedTransfer queued = new QueuedTransfer(new Transfer(fromId, toId, money));
+
+        closeLock.readLock().lock();
+        try {
+            if (!running) {
+                throw new RejectedExecutionException("pipeline is closed");
+            }
+            if (!queue.offer(queued, offerTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new RejectedExecutionException("transfer queue is full size = " + queue.size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("interrupted while waiting for queue", e);
+        } finally {
+            closeLock.readLock().unlock();
+        }
+        return queued.future;
+    }
+
+    public int getGroupSize() {
+        return groupSize;
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * 큐에 남은 이체를 모두 커밋하고 쓰기 스레드를 종료한다.
+     * 쓰기 스레드가 제시간에 끝나지 않으면 큐에 남은 이체는 RejectedExecutionException으로 완료한다.
+     */
+    @Override
+    public void close() {
+        closeLock.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        rejectQueued();
+    }
+
+    private void rejectQueued() {
+        List<QueuedTransfer> rejected = new ArrayList<>();
+        queue.drainTo(rejected);
+        rejected.forEach(queued -> queued.future.completeExceptionally(new RejectedExecutionException("pipeline is closed")));
+    }
+
+
+    /**
+     * 어떤 이유로 루프를 빠져나가든 finally에서 submit을 막고 큐를 비우므로 완료되지 않는 future가 남지 않는다.
+     */
+    private void writeLoop() {
+        List<QueuedTransfer> group = new ArrayList<>(maxGroupSize);
+        try {
+            while (running || !queue.isEmpty()) {
+                group.clear();
+                try {
+                    QueuedTransfer first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    group.add(first);
+                    queue.drainTo(group, groupSize - 1);
+                    commitGroup(group);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (RuntimeException e) {
+                    log.error("group commit writer error", e);
+                    group.forEach(queued -> queued.future.completeExceptionally(e));
+                }
+            }
+        } catch (Throwable e) {
+            log.error("group commit writer stopped", e);
+            group.forEach(queued -> queued.future.completeExceptionally(e));
+            throw e;
+        } finally {
+            closeLock.writeLock().lock();
+            try {
+                running = false;
+            } finally {
+                closeLock.writeLock().unlock();
+            }
+            rejectQueued();
+        }
+    }
+
+    private void commitGroup(List<QueuedTransfer> group) {
+        List<QueuedTransfer> applied = new ArrayList<>(group.size());
+        long[] commitStart = new long[1];
+        try {
+            txTemplate.executeWithoutResult(status -> {
+                for (QueuedTransfer queued : group) {
+                    Object savepoint = status.createSavepoint();
+                    try {
+                        bizLogic(queued.transfer);
+                        status.releaseSavepoint(savepoint);
+                        applied.add(queued);
+                    } catch (RuntimeException e) {
+                        status.rollbackToSavepoint(savepoint);
+                        queued.future.completeExceptionally(e);
+                    }
+                }
+                commitStart[0] = System.nanoTime();
+            });
+        } catch (RuntimeException e) {
+            // 커밋 실패만이 아니라 트랜잭션 시작 실패 등도 여기로 온다. savepoint에서 이미 실패한 이체는 그대로 남는다.
+            log.info("group commit failed size = {}", group.size(), e);
+            group.forEach(queued -> queued.future.completeExceptionally(e));
+            return;
+        }
+
+        long elapsed = System.nanoTime() - commitStart[0];
+        applied.forEach(queued -> queued.future.complete(null));
+        adjustGroupSize(elapsed);
+    }
+
+    private void adjustGroupSize(long commitNanos) {
+        int current = groupSize;
+        int next = commitNanos <= targetCommitNanos
+                ? Math.min(maxGroupSize, current + 1)
+                : Math.max(minGroupSize, current / 2);
+        if (next != current) {
+            log.debug("group size {} -> {} commit = {}ms", current, next, TimeUnit.NANOSECONDS.toMillis(commitNanos));
+            groupSize = next;
+        }
+    }
+
+    private void bizLogic(Transfer transfer) {
+        TransferRules.validation(transfer.getToId());
+        memberRepository.transfer(transfer.getFromId(), transfer.getToId(), transfer.getMoney());
+    }
+
+
+    private static class QueuedTransfer {
+
+        private final Transfer transfer;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        QueuedTransfer(Transfer transfer) {
+            this.transfer = transfer;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package hello.jdbc.service;
+
+import java.util.Arrays;
+
+
+/**
+ *  memberId -> 0부터 시작하는 int 번호 (open addressing)
+ *  번호를 배열 인덱스로 써서 회원별 값을 long[] 같은 기본형 배열에 담는다. (Integer 박싱 없이)
+ */
+class MemberIdIndex {
+
+    private String[] keys;
+    private int[] slots;
+    private String[] ids;
+    private int size;
+
+    MemberIdIndex(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2) - 1) << 1;
+        keys = new String[capacity];
+        slots = new int[capacity];
+        ids = new String[Math.max(4, expectedSize)];
+    }
+
+    /**
+     * 처음 보는 memberId면 새 번호를 준다.
+     */
+    int indexOf(String memberId) {
+        int mask = keys.length - 1;
+        int h = memberId.hashCode();
+        int slot = (h ^ (h >>> 16)) & mask;
+
+        while (keys[slot] != null) {
+            if (keys[slot].equals(memberId)) {
+                return slots[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        int index = size++;
+        keys[slot] = memberId;
+        slots[slot] = index;
+        if (index >= ids.length) {
+            ids = Arrays.copyOf(ids, ids.length * 2);
+        }
+        ids[index] = memberId;
+
+        if (size * 2 > keys.length) {
+            rehash();
+        }
+        return index;
+    }
+
+    String idOf(int index) {
+        return ids[index];
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void rehash() {
+        String[] oldKeys = keys;
+        int[] oldSlots = slots;
+        keys = new String[oldKeys.length * 2];
+        slots = new int[oldKeys.length * 2];
+        int mask = keys.length - 1;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == null) {
+                continue;
+            }
+            int h = oldKeys[i].hashCode();
+            int slot = (h ^ (h >>> 16)) & mask;
+            while (keys[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = oldKeys[i];
+            slots[slot] = oldSlots[i];
+        }
+    }
+}
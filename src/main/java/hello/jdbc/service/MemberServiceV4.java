@@ -2,9 +2,14 @@ package hello.jdbc.service;
 
 import hello.jdbc.domain.Member;
 import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.retry.RetryOnTransientFailure;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.dao.DuplicateKeyException;
+import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+
+import java.util.ArrayList;
+import java.util.List;
 
 
 /**
@@ -24,41 +29,87 @@ public class MemberServiceV4 {
     }
 
 
+    @RetryOnTransientFailure   // 락 타임아웃, 교착 상태면 트랜잭션 전체를 다시 실행한다. (TransientRetryConfig 필요)
     @Transactional  // 이거 쓰려면 스프링 컨테이너가 필요하다.
     public void accountTransfer(String fromId, String toId, int money) {
         bizLogic(fromId, toId, money);
     }
 
     /**
-     * bizLogic
-     *   트랜잭션이 시작된 커넥션을 전달하면서 비즈니스 로직을 수행한다.
-     *   이렇게 분리한 이유는 트랜잭션을 관리하는 로직과 실제 비즈니스 로직을 구분하기 위함이다.
-     *   memberRepository.update(con..) : 비즈니스 로직을 보면 리포지토리를 호출할 때 커넥션을
-     *   전달하는 것을 확인할 수 있다.
+     * 락 순서 고정 이체
+     *   select ... for update로 두 행을 memberId 순서대로 먼저 잠그고 나서 변경한다.
+     *   accountTransfer는 update 한 번(transfer)으로 두 행을 같은 순서로 잠그므로 이미 교착 상태가 생기지 않는다.
+     *   이 방식은 조회 2번이 더 든다. 두 행을 여러 문장으로 나눠 변경하는 리포지토리(ShardedBalanceMemberRepository 등)나
+     *   트랜잭션 안에서 다른 작업을 먼저 하는 경우에 쓴다.
      */
-    private void bizLogic(String fromId, String toId, int money) {
-        // 비즈니스 로직
+    @RetryOnTransientFailure
+    @Transactional
+    public void accountTransferOrdered(String fromId, String toId, int money) {
+        boolean fromFirst = fromId.compareTo(toId) <= 0;
+        memberRepository.findByIdForUpdate(fromFirst ? fromId : toId);
+        memberRepository.findByIdForUpdate(fromFirst ? toId : fromId);
+
+        bizLogic(fromId, toId, money);
+    }
+
+    /**
+     * 낙관적 락 이체
+     *   행 락 없이 조회한 version으로 compare-and-set 한다.
+     *   조회한 뒤에 다른 트랜잭션이 변경했으면 OptimisticLockingFailureException이 발생하고 롤백된다.
+     *   OptimisticLockingFailureException은 TransientDataAccessException이므로 @RetryOnTransientFailure가
+     *   트랜잭션 바깥에서 다시 실행한다. 충돌이 몰리면 재시도 예산(budgetRatio)까지만 재시도한다. (TransientRetryConfig 필요)
+     */
+    @RetryOnTransientFailure(maxAttempts = 5, initialBackoffMillis = 5, maxBackoffMillis = 200)
+    @Transactional
+    public void accountTransferOptimistic(String fromId, String toId, int money) {
         Member fromMember = memberRepository.findById(fromId);
         Member toMember = memberRepository.findById(toId);
 
-        // 이런식으로 작성해도 됨
-//        try {
-//            memberRepository.update(fromId, fromMember.getMoney() - money);
-//        } catch (DuplicateKeyException e) {
-//            // 복구
-//        }
+        memberRepository.updateWithVersion(fromId, fromMember.getMoney() - money, fromMember.getVersion());
 
+        TransferRules.validation(toId);
 
-        memberRepository.update(fromId, fromMember.getMoney() - money);
+        memberRepository.updateWithVersion(toId, toMember.getMoney() + money, toMember.getVersion());
+    }
 
-        validation(toMember);
+    /**
+     * 일괄 이체
+     *   이체마다 savepoint를 만들어서 실패한 이체는 그 이체만 롤백하고, 나머지는 한 번에 커밋한다.
+     *   실패한 이체의 예외는 던지지 않고 결과에 담는다. 커밋이 실패하면 그 예외가 그대로 던져진다.
+     */
+    @Transactional
+    public List<TransferResult> transferAll(List<Transfer> transfers) {
+        TransactionStatus status = TransactionAspectSupport.currentTransactionStatus();
+        List<TransferResult> results = new ArrayList<>(transfers.size());
 
-        memberRepository.update(toId, toMember.getMoney() + money);
+        for (Transfer transfer : transfers) {
+            Object savepoint = status.createSavepoint();
+            try {
+                bizLogic(transfer.getFromId(), transfer.getToId(), transfer.getMoney());
+                status.releaseSavepoint(savepoint);
+                results.add(TransferResult.success(transfer));
+            } catch (RuntimeException e) {
+                status.rollbackToSavepoint(savepoint);
+                log.info("transfer failed {}", transfer, e);
+                results.add(TransferResult.failure(transfer, e));
+            }
+        }
+        return results;
     }
 
-    private void validation(Member toMember) {
-        if (toMember.getMemberId().equals("ex")) {
-            throw new IllegalStateException("이체중 예외 발생");
-        }
+    /**
+     * bizLogic
+     *   트랜잭션이 시작된 커넥션을 전달하면서 비즈니스 로직을 수행한다.
+     *   이렇게 분리한 이유는 트랜잭션을 관리하는 로직과 실제 비즈니스 로직을 구분하기 위함이다.
+     *
+     *   findById로 읽은 값으로 update 하지 않고, 출금과 입금을 update 한 번으로 데이터베이스에서 처리한다.
+     *   조회 2번 + 수정 2번이 데이터베이스 호출 1번으로 줄고, 다른 트랜잭션의 변경을 덮어쓰지 않는다.
+     *   검증은 update 전에 한다. 검증에 실패하면 아무것도 변경되지 않으므로 결과는 이전과 같다.
+     */
+    private void bizLogic(String fromId, String toId, int money) {
+        // 비즈니스 로직
+        TransferRules.validation(toId);
+
+        memberRepository.transfer(fromId, toId, money);
     }
 }
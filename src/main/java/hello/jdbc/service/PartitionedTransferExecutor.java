@@ -0,0 +1,184 @@
+package hello.jdbc.service;
+
+import hello.jdbc.repository.MemberRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.jdbc.datasource.ConnectionHolder;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ *  계정 파티션 단일 writer 이체
+ *
+ *  memberId를 해시해서 partitionCount 개의 파티션으로 나눈다.
+ *  파티션마다 스레드 하나가 전용 커넥션을 쥐고 자기 회원의 이체를 순서대로 처리하므로 행 락 경합이 없다.
+ *  전용 커넥션은 그 스레드에 ConnectionHolder로 바인딩해 두고, TransactionTemplate이 그 커넥션으로 트랜잭션을 시작한다.
+ *
+ *  - 같은 파티션: 그 파티션에서 transfer 한 번 (accountTransfer와 같다)
+ *  - 다른 파티션: 출금 회원의 파티션에서 출금을 커밋한 뒤 입금 회원의 파티션에 입금을 넘긴다.
+ *               입금이 실패하면 출금 회원의 파티션에서 출금한 금액을 되돌리고(보상) 실패로 완료한다.
+ *               출금과 입금 사이에는 금액이 어느 쪽에도 보이지 않는 구간이 있다.
+ *
+ *  파티션 수만큼 커넥션을 계속 쓰므로 커넥션 풀 크기보다 작게 둔다.
+ *  생성 중에 커넥션을 얻지 못하면 이미 시작한 파티션의 커넥션을 돌려주고 스레드를 종료한 뒤 예외를 던진다.
+ */
+@Slf4j
+public class PartitionedTransferExecutor implements AutoCloseable {
+
+    private final MemberRepository memberRepository;
+    private final DataSource dataSource;
+    private final TransactionTemplate txTemplate;
+    private final ExecutorService[] partitions;
+
+    public PartitionedTransferExecutor(MemberRepository memberRepository, DataSource dataSource,
+                                       PlatformTransactionManager transactionManager, int partitionCount) {
+        this.memberRepository = memberRepository;
+        this.dataSource = dataSource;
+        this.txTemplate = new TransactionTemplate(transactionManager);
+        this.partitions = new ExecutorService[partitionCount];
+
+        int started = 0;
+        try {
+            for (int p = 0; p < partitionCount; p++) {
+                String name = "transfer-partition-" + p;
+                partitions[p] = Executors.newSingleThreadExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, name);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                started++;
+                CompletableFuture.runAsync(this::bindConnection, partitions[p]).join();
+            }
+        } catch (RuntimeException e) {
+            // 앞에서 시작한 파티션의 커넥션과 스레드를 정리한다.
+            shutdown(started);
+            Throwable cause = unwrap(e);
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : e;
+        }
+    }
+
+
+    /**
+     * MemberServiceV4.accountTransfer 와 같은 형태로 호출한다. 이체가 끝날 때까지 기다린다.
+     */
+    public void accountTransfer(String fromId, String toId, int money) {
+        try {
+            submit(fromId, toId, money).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    public CompletableFuture<Void> submit(String fromId, String toId, int money) {
+        int fromPartition = partitionOf(fromId);
+        int toPartition = partitionOf(toId);
+
+        if (fromPartition == toPartition) {
+            return CompletableFuture.runAsync(() -> inTransaction(() -> {
+                TransferRules.validation(toId);
+                memberRepository.transfer(fromId, toId, money);
+            }), partitions[fromPartition]);
+        }
+
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        CompletableFuture.runAsync(() -> inTransaction(() -> {
+            TransferRules.validation(toId);
+            memberRepository.addMoney(fromId, -money);
+        }), partitions[fromPartition]).whenComplete((debited, debitEx) -> {
+            if (debitEx != null) {
+                result.completeExceptionally(unwrap(debitEx));
+                return;
+            }
+            CompletableFuture.runAsync(() -> inTransaction(() -> memberRepository.addMoney(toId, money)),
+                    partitions[toPartition]).whenComplete((credited, creditEx) -> {
+                if (creditEx == null) {
+                    result.complete(null);
+                    return;
+                }
+                compensate(fromId, money, fromPartition, unwrap(creditEx), result);
+            });
+        });
+        return result;
+    }
+
+    /**
+     * 입금이 실패하면 출금 회원의 파티션에서 출금한 금액을 되돌린다.
+     */
+    private void compensate(String fromId, int money, int fromPartition, Throwable cause, CompletableFuture<Void> result) {
+        log.info("credit failed, compensating debit fromId = {}, money = {}", fromId, money, cause);
+        CompletableFuture.runAsync(() -> inTransaction(() -> memberRepository.addMoney(fromId, money)),
+                partitions[fromPartition]).whenComplete((compensated, compensateEx) -> {
+            if (compensateEx != null) {
+                log.error("compensation failed fromId = {}, money = {}", fromId, money, compensateEx);
+                cause.addSuppressed(unwrap(compensateEx));
+            }
+            result.completeExceptionally(cause);
+        });
+    }
+
+    int partitionOf(String memberId) {
+        return Math.floorMod(memberId.hashCode(), partitions.length);
+    }
+
+    /**
+     * 제출한 이체가 모두 끝난 뒤에 호출한다. 전용 커넥션을 풀에 돌려주고 파티션 스레드를 종료한다.
+     */
+    @Override
+    public void close() {
+        shutdown(partitions.length);
+    }
+
+    private void shutdown(int count) {
+        for (int p = 0; p < count; p++) {
+            partitions[p].execute(this::releaseConnection);
+            partitions[p].shutdown();
+        }
+        for (int p = 0; p < count; p++) {
+            try {
+                partitions[p].awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    private void inTransaction(Runnable task) {
+        txTemplate.executeWithoutResult(status -> task.run());
+    }
+
+    private void bindConnection() {
+        try {
+            Connection con = dataSource.getConnection();
+            TransactionSynchronizationManager.bindResource(dataSource, new ConnectionHolder(con));
+        } catch (SQLException e) {
+            throw new CannotGetJdbcConnectionException("Failed to obtain partition connection", e);
+        }
+    }
+
+    private void releaseConnection() {
+        ConnectionHolder holder = (ConnectionHolder) TransactionSynchronizationManager.unbindResourceIfPossible(dataSource);
+        if (holder != null) {
+            JdbcUtils.closeConnection(holder.getConnection());
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package hello.jdbc.service;
+
+import hello.jdbc.lock.StripedLockManager;
+import lombok.extern.slf4j.Slf4j;
+
+
+/**
+ *  인기 계좌 이체 직렬화
+ *
+ *  같은 계좌로 이체가 몰리면 모든 스레드가 커넥션을 하나씩 쥔 채로 H2 행 락을 기다리고, 커넥션 풀이 고갈된다.
+ *  MemberServiceV4(트랜잭션 프록시)를 호출하기 전에 두 memberId의 stripe 락을 순서대로 잡는다.
+ *  커넥션은 트랜잭션이 시작될 때 얻으므로, 경합하는 이체는 커넥션 없이 JVM 안에서 기다린다.
+ */
+@Slf4j
+public class StripedLockTransferExecutor {
+
+    private final MemberServiceV4 memberService;
+    private final StripedLockManager lockManager;
+
+    public StripedLockTransferExecutor(MemberServiceV4 memberService, StripedLockManager lockManager) {
+        this.memberService = memberService;
+        this.lockManager = lockManager;
+    }
+
+    public void accountTransfer(String fromId, String toId, int money) {
+        lockManager.runWithLocks(() -> memberService.accountTransfer(fromId, toId, money), fromId, toId);
+    }
+
+    public StripedLockManager getLockManager() {
+        return lockManager;
+    }
+}
@@ -0,0 +1,14 @@
+package hello.jdbc.service;
+
+import lombok.Value;
+
+/**
+ * 이체 요청 한 건
+ */
+@Value
+public class Transfer {
+
+    String fromId;
+    String toId;
+    int money;
+}
@@ -0,0 +1,230 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.ex.InsufficientMoneyException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+
+/**
+ *  이체 상계(netting)
+ *
+ *  windowMillis 동안(또는 maxBatchSize 건이 모일 때까지) 이체를 모아서 회원별 순변동(net delta)만 반영한다.
+ *  A->B 100, B->A 70 이면 update 4번 대신 A -30, B +30 두 번이면 된다.
+ *
+ *  1. 모인 이체의 잔액을 findAllById로 한 번에 읽고, 도착 순서대로 적용해 보면서 잔액이 음수가 되는 이체는 그 이체만 실패시킨다.
+ *  2. 남은 이체의 순변동을 한 트랜잭션에서 반영한다. 출금은 money >= ? 조건으로 반영해서 그 사이 다른 변경이 있어도 음수가 되지 않는다.
+ *  3. 커밋되면 각 호출자의 CompletableFuture를 완료한다. 반영이 실패하면 그 묶음의 이체가 모두 실패한다.
+ *     (트랜잭션 시작, findAllById 실패 등 적용해 보기 전에 실패해도 묶음의 이체가 모두 그 예외로 완료된다.)
+ *
+ *  검증 실패와 close 이후의 submit은 예외를 던지지 않고 실패한 CompletableFuture를 돌려준다.
+ *
+ *  묶음 처리는 전용 스레드 하나가 순서대로 한다.
+ */
+@Slf4j
+public class TransferNettingEngine implements AutoCloseable {
+
+    private final MemberRepository memberRepository;
+    private final TransactionTemplate txTemplate;
+    private final int maxBatchSize;
+    private final long windowMillis;
+
+    private final ScheduledExecutorService scheduler;
+    private final ReentrantLock lock = new ReentrantLock();
+    private List<PendingTransfer> pending = new ArrayList<>();
+    private boolean closed;
+
+    public TransferNettingEngine(MemberRepository memberRepository, PlatformTransactionManager transactionManager,
+                                 int maxBatchSize, long windowMillis) {
+        this.memberRepository = memberRepository;
+        this.txTemplate = new TransactionTemplate(transactionManager);
+        this.maxBatchSize = maxBatchSize;
+        this.windowMillis = windowMillis;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "transfer-netting");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+
+    public CompletableFuture<Void> submit(String fromId, String toId, int money) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            validation(fromId, toId);
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        List<PendingTransfer> full = null;
+        lock.lock();
+        try {
+            if (closed) {
+                future.completeExceptionally(new IllegalStateException("netting engine is closed"));
+                return future;
+            }
+            pending.add(new PendingTransfer(new Transfer(fromId, toId, money), future));
+
+            if (pending.size() == 1) {
+                scheduler.schedule(this::flushPending, windowMillis, TimeUnit.MILLISECONDS);
+            }
+            if (pending.size() >= maxBatchSize) {
+                full = pending;
+                pending = new ArrayList<>();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (full != null) {
+            List<PendingTransfer> batch = full;
+            scheduler.execute(() -> flush(batch));
+        }
+        return future;
+    }
+
+    /**
+     * 남은 이체를 반영하고 스레드를 종료한다.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        } finally {
+            lock.unlock();
+        }
+        scheduler.execute(this::flushPending);
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    private void flushPending() {
+        List<PendingTransfer> batch;
+        lock.lock();
+        try {
+            batch = pending;
+            pending = new ArrayList<>();
+        } finally {
+            lock.unlock();
+        }
+        if (!batch.isEmpty()) {
+            flush(batch);
+        }
+    }
+
+    private void flush(List<PendingTransfer> batch) {
+        List<PendingTransfer> accepted = new ArrayList<>(batch.size());
+        try {
+            txTemplate.executeWithoutResult(status -> {
+                accepted.clear();
+                applyNet(batch, accepted);
+            });
+        } catch (RuntimeException e) {
+            // 검증에서 이미 실패한 이체는 그대로 두고 나머지는 모두 이 예외로 완료한다.
+            log.info("netting batch failed size = {}", batch.size(), e);
+            batch.forEach(transfer -> transfer.future.completeExceptionally(e));
+            return;
+        }
+
+        accepted.forEach(transfer -> transfer.future.complete(null));
+    }
+
+    private void applyNet(List<PendingTransfer> batch, List<PendingTransfer> accepted) {
+        MemberIdIndex index = new MemberIdIndex(batch.size() * 2);
+        for (PendingTransfer pendingTransfer : batch) {
+            index.indexOf(pendingTransfer.transfer.getFromId());
+            index.indexOf(pendingTransfer.transfer.getToId());
+        }
+
+        List<String> memberIds = new ArrayList<>(index.size());
+        for (int i = 0; i < index.size(); i++) {
+            memberIds.add(index.idOf(i));
+        }
+        Map<String, Member> members = memberRepository.findAllById(memberIds);
+
+        long[] balances = new long[index.size()];
+        boolean[] exists = new boolean[index.size()];
+        for (int i = 0; i < index.size(); i++) {
+            Member member = members.get(index.idOf(i));
+            if (member != null) {
+                balances[i] = member.getMoney();
+                exists[i] = true;
+            }
+        }
+
+        // 도착 순서대로 적용해 보면서 잔액이 음수가 되는 이체만 뺀다.
+        long[] deltas = new long[index.size()];
+        for (PendingTransfer pendingTransfer : batch) {
+            Transfer transfer = pendingTransfer.transfer;
+            int from = index.indexOf(transfer.getFromId());
+            int to = index.indexOf(transfer.getToId());
+
+            if (!exists[from] || !exists[to]) {
+                pendingTransfer.future.completeExceptionally(new NoSuchElementException(
+                        "member not fount memberId = " + (exists[from] ? transfer.getToId() : transfer.getFromId())));
+                continue;
+            }
+            if (balances[from] < transfer.getMoney()) {
+                pendingTransfer.future.completeExceptionally(new InsufficientMoneyException(
+                        "insufficient money memberId = " + transfer.getFromId() + ", required = " + transfer.getMoney()));
+                continue;
+            }
+
+            balances[from] -= transfer.getMoney();
+            balances[to] += transfer.getMoney();
+            deltas[from] -= transfer.getMoney();
+            deltas[to] += transfer.getMoney();
+            accepted.add(pendingTransfer);
+        }
+
+        for (int i = 0; i < deltas.length; i++) {
+            if (deltas[i] < 0) {
+                memberRepository.addMoney(index.idOf(i), Math.toIntExact(deltas[i]), Math.toIntExact(-deltas[i]));
+            } else if (deltas[i] > 0) {
+                memberRepository.addMoney(index.idOf(i), Math.toIntExact(deltas[i]));
+            }
+        }
+        log.info("netting batch transfers = {}, accepted = {}, members = {}", batch.size(), accepted.size(), index.size());
+    }
+
+    private void validation(String fromId, String toId) {
+        if (fromId.equals(toId)) {
+            throw new IllegalArgumentException("cannot transfer to the same member memberId = " + fromId);
+        }
+        TransferRules.validation(toId);
+    }
+
+
+    private static class PendingTransfer {
+
+        private final Transfer transfer;
+        private final CompletableFuture<Void> future;
+
+        PendingTransfer(Transfer transfer, CompletableFuture<Void> future) {
+            this.transfer = transfer;
+            this.future = future;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package hello.jdbc.service;
+
+import lombok.Value;
+
+/**
+ * 이체 한 건의 처리 결과
+ *   성공하면 exception은 null
+ */
+@Value
+public class TransferResult {
+
+    Transfer transfer;
+    RuntimeException exception;
+
+    public static TransferResult success(Transfer transfer) {
+        return new TransferResult(transfer, null);
+    }
+
+    public static TransferResult failure(Transfer transfer, RuntimeException exception) {
+        return new TransferResult(transfer, exception);
+    }
+
+    public boolean isSuccess() {
+        return exception == null;
+    }
+}
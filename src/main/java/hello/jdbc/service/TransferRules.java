@@ -0,0 +1,18 @@
+package hello.jdbc.service;
+
+
+/**
+ * 이체 검증 규칙
+ *   MemberServiceV4와 이체를 직접 실행하는 실행기들(상계, 그룹 커밋, 파티션)이 같은 규칙을 쓰도록 한 곳에 둔다.
+ */
+final class TransferRules {
+
+    private TransferRules() {
+    }
+
+    static void validation(String toId) {
+        if (toId.equals("ex")) {
+            throw new IllegalStateException("이체중 예외 발생");
+        }
+    }
+}
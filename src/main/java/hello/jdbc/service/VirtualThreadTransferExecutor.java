@@ -0,0 +1,94 @@
+package hello.jdbc.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ *  가상 스레드 이체
+ *
+ *  이체마다 가상 스레드 하나로 MemberServiceV4를 호출한다. H2 응답을 기다리는 동안 플랫폼 스레드를 점유하지 않는다.
+ *  동시에 커넥션을 쓰는 이체 수는 Semaphore로 커넥션 풀 크기까지로 제한한다.
+ *  나머지는 커넥션 풀(HikariCP)이 아니라 세마포어에서 기다리므로 connectionTimeout에 걸리지 않고, 대기 비용은 가상 스레드 하나다.
+ *
+ *  H2 드라이버 내부의 synchronized는 바꿀 수 없다. 드라이버에서 블로킹된 가상 스레드는 캐리어를 붙잡으므로(pinning)
+ *  permits가 캐리어 수(기본 availableProcessors)보다 많으면 캐리어가 모두 붙잡혀 다른 가상 스레드가 실행되지 못할 수 있다.
+ *  그래서 HikariDataSource를 받는 생성자는 permits를 min(커넥션 풀 크기, availableProcessors)로 둔다.
+ */
+@Slf4j
+public class VirtualThreadTransferExecutor implements AutoCloseable {
+
+    private final MemberServiceV4 memberService;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final int maxConcurrency;
+    private final Semaphore permits;
+
+    public VirtualThreadTransferExecutor(MemberServiceV4 memberService, HikariDataSource dataSource) {
+        this(memberService, Math.min(dataSource.getMaximumPoolSize(), Runtime.getRuntime().availableProcessors()));
+    }
+
+    public VirtualThreadTransferExecutor(MemberServiceV4 memberService, int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be positive: " + maxConcurrency);
+        }
+        this.memberService = memberService;
+        this.maxConcurrency = maxConcurrency;
+        this.permits = new Semaphore(maxConcurrency, true);
+    }
+
+
+    public CompletableFuture<Void> submit(String fromId, String toId, int money) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+            try {
+                memberService.accountTransfer(fromId, toId, money);
+            } finally {
+                permits.release();
+            }
+        }, executor);
+    }
+
+    /**
+     * MemberServiceV4.accountTransfer 와 같은 형태로 호출한다. 이체가 끝날 때까지 기다린다.
+     */
+    public void accountTransfer(String fromId, String toId, int money) {
+        try {
+            submit(fromId, toId, money).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public int getWaitingCount() {
+        return permits.getQueueLength();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,17 @@
+-- member 테이블. 여러 번 실행해도 된다. (spring.sql.init.mode=always)
+create table if not exists member (
+    member_id varchar(10),
+    money integer not null default 0,
+    primary key (member_id)
+);
+
+-- 낙관적 락 version. 이 컬럼이 생기기 전에 만든 테이블에도 추가된다.
+alter table member add column if not exists version bigint default 0 not null;
+
+-- ShardedBalanceMemberRepository - 인기 계좌의 부분 잔액
+create table if not exists member_balance_shard (
+    member_id varchar(10) not null,
+    shard integer not null,
+    money integer default 0 not null,
+    primary key (member_id, shard)
+);
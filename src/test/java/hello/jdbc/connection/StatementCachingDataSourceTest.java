@@ -0,0 +1,132 @@
+package hello.jdbc.connection;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepositoryV4_2;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+class StatementCachingDataSourceTest {
+
+    HikariDataSource hikariDataSource;
+    StatementCachingDataSource dataSource;
+
+    @BeforeEach
+    void beforeEach() {
+        hikariDataSource = new HikariDataSource();
+        hikariDataSource.setJdbcUrl(URL);
+        hikariDataSource.setUsername(USERNAME);
+        hikariDataSource.setPassword(PASSWORD);
+        hikariDataSource.setMaximumPoolSize(1);
+
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(hikariDataSource);
+        dataSource = new StatementCachingDataSource(hikariDataSource, 8);
+    }
+
+    @AfterEach
+    void after() {
+        hikariDataSource.close();
+    }
+
+    @Test
+    void reuseAcrossCheckouts() throws SQLException {
+        PreparedStatement firstTarget;
+        try (Connection con = dataSource.getConnection()) {
+            PreparedStatement first = con.prepareStatement("select 1");
+            first.executeQuery().close();
+            firstTarget = first.unwrap(PreparedStatement.class);
+            first.close();
+        }
+
+        // 풀 크기가 1이므로 같은 물리 커넥션이 다시 나온다.
+        try (Connection con = dataSource.getConnection()) {
+            PreparedStatement second = con.prepareStatement("select 1");
+            second.executeQuery().close();
+            assertThat(second.unwrap(PreparedStatement.class)).isSameAs(firstTarget);
+            second.close();
+        }
+
+        assertThat(dataSource.getMissCount()).isEqualTo(1);
+        assertThat(dataSource.getHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void settingsResetBeforeReuse() throws SQLException {
+        int defaultFetchSize;
+        try (Connection con = dataSource.getConnection()) {
+            PreparedStatement first = con.prepareStatement("select 1");
+            defaultFetchSize = first.getFetchSize();
+            first.setQueryTimeout(5);
+            first.setFetchSize(10);
+            first.setMaxRows(3);
+            first.close();
+        }
+
+        // 같은 Statement가 다시 나오지만 설정은 드라이버 기본값으로 돌아와 있다.
+        try (Connection con = dataSource.getConnection()) {
+            PreparedStatement second = con.prepareStatement("select 1");
+            assertThat(dataSource.getHitCount()).isEqualTo(1);
+            assertThat(second.getQueryTimeout()).isZero();
+            assertThat(second.getFetchSize()).isEqualTo(defaultFetchSize);
+            assertThat(second.getMaxRows()).isZero();
+            second.close();
+        }
+    }
+
+    @Test
+    void invalidCacheSize() {
+        assertThatThrownBy(() -> new StatementCachingDataSource(hikariDataSource, 0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void repository() {
+        MemberRepositoryV4_2 repository = new MemberRepositoryV4_2(dataSource);
+        repository.save(new Member("cacheA", 10000));
+
+        for (int i = 0; i < 10; i++) {
+            repository.findById("cacheA");
+        }
+        repository.delete("cacheA");
+
+        log.info("hit = {}, miss = {}, ratio = {}", dataSource.getHitCount(), dataSource.getMissCount(), dataSource.getHitRatio());
+        assertThat(dataSource.getHitCount()).isGreaterThanOrEqualTo(9);
+    }
+
+    @Test
+    void uncommittedWorkRolledBackOnClose() throws SQLException {
+        try (Connection con = dataSource.getConnection()) {
+            con.setAutoCommit(false);
+            try (PreparedStatement pstmt = con.prepareStatement("insert into member(member_id, money) values (?, ?)")) {
+                pstmt.setString(1, "cacheTx");
+                pstmt.setInt(2, 10000);
+                pstmt.executeUpdate();
+            }
+            // commit 없이 반납
+        }
+
+        // 풀 크기가 1이므로 같은 물리 커넥션이 다시 나온다.
+        try (Connection con = dataSource.getConnection();
+             PreparedStatement pstmt = con.prepareStatement("select count(*) from member where member_id = ?")) {
+            pstmt.setString(1, "cacheTx");
+            try (ResultSet rs = pstmt.executeQuery()) {
+                rs.next();
+                assertThat(rs.getInt(1)).isZero();
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package hello.jdbc.lock;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Slf4j
+class StripedLockManagerTest {
+
+    @Test
+    void stripeCountRoundUp() {
+        assertThat(new StripedLockManager(1).getStripeCount()).isEqualTo(1);
+        assertThat(new StripedLockManager(48).getStripeCount()).isEqualTo(64);
+        assertThat(new StripedLockManager(64).getStripeCount()).isEqualTo(64);
+    }
+
+    @Test
+    void sameKeyTwice() {
+        StripedLockManager lockManager = new StripedLockManager(8);
+
+        Integer result = lockManager.callWithLocks(() -> 1, "memberA", "memberA");
+
+        assertThat(result).isEqualTo(1);
+        assertThat(lockManager.getAcquisitions()).isEqualTo(1);
+    }
+
+    /**
+     * A->B, B->A를 동시에 잠가도 stripe 순서대로 잠그므로 교착 상태가 생기지 않는다.
+     */
+    @Test
+    void oppositeOrderNoDeadlock() throws Exception {
+        StripedLockManager lockManager = new StripedLockManager(16);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        int[] counter = new int[1];
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            boolean forward = t % 2 == 0;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    lockManager.runWithLocks(() -> counter[0]++, forward ? "memberA" : "memberB", forward ? "memberB" : "memberA");
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        log.info("contended = {}, waitNanos = {}", lockManager.getContended(), lockManager.getWaitNanos());
+        assertThat(counter[0]).isEqualTo(80_000);
+    }
+}
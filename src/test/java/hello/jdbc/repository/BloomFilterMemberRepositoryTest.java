@@ -0,0 +1,128 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.dao.EmptyResultDataAccessException;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Bloom filter - 없는 회원은 데이터베이스를 거치지 않는다.
+ */
+@SpringBootTest
+class BloomFilterMemberRepositoryTest {
+
+    public static final String MEMBER_A = "memberA";
+    public static final String MEMBER_B = "memberB";
+
+    @Autowired private MemberRepository memberRepository;
+
+    private BloomFilterMemberRepository bloomRepository;
+
+    @TestConfiguration
+    static class testConfig {
+
+        private final DataSource dataSource;
+
+        public testConfig(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        @Bean
+        MemberRepository memberRepository() {
+            return new MemberRepositoryV5(dataSource);
+        }
+    }
+
+    @BeforeEach
+    void before() {
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        bloomRepository = new BloomFilterMemberRepository(memberRepository, 10_000, 0.001, 1);
+    }
+
+    @AfterEach
+    void after() {
+        bloomRepository.close();
+        memberRepository.delete(MEMBER_A);
+        memberRepository.delete(MEMBER_B);
+    }
+
+    @Test
+    void definiteMiss() {
+        assertThat(bloomRepository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+
+        assertThatThrownBy(() -> bloomRepository.findById("missing"))
+                .isInstanceOf(NoSuchElementException.class)
+                .hasMessage("member not fount memberId = missing");
+        assertThat(bloomRepository.getShortCircuitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void saveIsVisibleImmediately() {
+        assertThat(bloomRepository.mightContain(MEMBER_B)).isFalse();
+
+        bloomRepository.save(new Member(MEMBER_B, 20000));
+
+        assertThat(bloomRepository.findById(MEMBER_B).getMoney()).isEqualTo(20000);
+        assertThat(bloomRepository.findAllById(List.of(MEMBER_A, MEMBER_B, "missing"))).hasSize(2);
+    }
+
+    @Test
+    void deleteTriggersRebuild() throws Exception {
+        bloomRepository.save(new Member(MEMBER_B, 20000));
+
+        // rebuildThreshold = 1
+        bloomRepository.delete(MEMBER_B);
+        bloomRepository.rebuild().get(10, TimeUnit.SECONDS);
+
+        assertThat(bloomRepository.mightContain(MEMBER_B)).isFalse();
+        assertThat(bloomRepository.mightContain(MEMBER_A)).isTrue();
+        assertThat(bloomRepository.getStaleCount()).isZero();
+    }
+
+    @Test
+    void missExceptionMatchesTarget() {
+        BloomFilterMemberRepository repository = new BloomFilterMemberRepository(memberRepository, 10_000, 0.001, 100,
+                memberId -> new EmptyResultDataAccessException("member not fount memberId = " + memberId, 1));
+        try {
+            repository.save(new Member(MEMBER_B, 20000));
+            // decorator를 거치지 않고 지우면 필터에는 남아 있다. (오탐과 같은 경우)
+            memberRepository.delete(MEMBER_B);
+            assertThat(repository.mightContain(MEMBER_B)).isTrue();
+
+            // 필터에서 걸러진 경우와 target까지 간 경우 모두 target(MemberRepositoryV5)과 같은 예외
+            assertThatThrownBy(() -> repository.findById("missing"))
+                    .isInstanceOf(EmptyResultDataAccessException.class);
+            assertThatThrownBy(() -> repository.findById(MEMBER_B))
+                    .isInstanceOf(EmptyResultDataAccessException.class);
+            assertThat(repository.getShortCircuitCount()).isEqualTo(1);
+        } finally {
+            repository.close();
+        }
+    }
+
+    @Test
+    void noRebuildAfterClose() {
+        bloomRepository.save(new Member(MEMBER_B, 20000));
+        bloomRepository.close();
+
+        // rebuildThreshold = 1 이지만 close 뒤에는 다시 만들지 않는다.
+        bloomRepository.delete(MEMBER_B);
+        assertThat(bloomRepository.rebuild()).isCompletedExceptionally();
+        assertThatThrownBy(() -> bloomRepository.rebuild().join())
+                .hasCauseInstanceOf(RejectedExecutionException.class);
+    }
+}
@@ -0,0 +1,111 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.service.MemberServiceV4;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 캐시 - 커밋된 변경만 캐시에 반영되는지 확인
+ */
+@Slf4j
+@SpringBootTest
+class CachingMemberRepositoryTest {
+
+    public static final String MEMBER_A = "memberA";
+    public static final String MEMBER_B = "memberB";
+
+    @Autowired private CachingMemberRepository memberRepository;
+    @Autowired private MemberServiceV4 memberService;
+    @Autowired private PlatformTransactionManager transactionManager;
+
+    @TestConfiguration
+    static class testConfig {
+
+        private final DataSource dataSource;
+
+        public testConfig(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        @Bean
+        CachingMemberRepository memberRepository() {
+            return new CachingMemberRepository(new MemberRepositoryV5(dataSource), 1000);
+        }
+
+        @Bean
+        MemberServiceV4 memberServiceV4() {
+            return new MemberServiceV4(memberRepository());
+        }
+    }
+
+    @AfterEach
+    void after() {
+        memberRepository.delete(MEMBER_A);
+        memberRepository.delete(MEMBER_B);
+    }
+
+    @Test
+    void commitEvicts() {
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+        memberRepository.findById(MEMBER_A);
+        memberRepository.findById(MEMBER_B);
+
+        memberService.accountTransfer(MEMBER_A, MEMBER_B, 2000);
+
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(8000);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(12000);
+    }
+
+    @Test
+    void rollbackKeepsCache() {
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.findById(MEMBER_A);
+
+        // 쓰고 나서 롤백
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            memberRepository.update(MEMBER_A, 1);
+            // 쓴 회원은 트랜잭션 안에서 캐시를 거치지 않는다.
+            assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(1);
+            status.setRollbackOnly();
+        });
+
+        long hitsBefore = memberRepository.stats().hitCount();
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+        assertThat(memberRepository.stats().hitCount()).isEqualTo(hitsBefore + 1);
+        log.info("stats = {}", memberRepository.stats());
+    }
+
+    @Test
+    void requiresNewCommitEvictsEvenIfOuterRollsBack() {
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+        memberRepository.findById(MEMBER_A);
+
+        TransactionTemplate requiresNew = new TransactionTemplate(transactionManager);
+        requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            memberRepository.update(MEMBER_B, 1);
+            // 안쪽 트랜잭션은 자기 목록을 쓰고, 자기 커밋 뒤에 지운다.
+            requiresNew.executeWithoutResult(innerStatus -> memberRepository.update(MEMBER_A, 3000));
+            status.setRollbackOnly();
+        });
+
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(3000);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(10000);
+    }
+}
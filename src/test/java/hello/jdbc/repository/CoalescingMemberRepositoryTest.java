@@ -0,0 +1,158 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.dao.EmptyResultDataAccessException;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * findById 요청 합치기 - 몰리는 조회에서 쿼리 수가 줄어드는지 확인
+ */
+@Slf4j
+@SpringBootTest
+class CoalescingMemberRepositoryTest {
+
+    static final int MEMBERS = 4;
+    static final int THREADS = 64;
+    static final int LOOKUPS_PER_THREAD = 50;
+
+    @Autowired private MemberRepository memberRepository;
+    @Autowired private DataSource dataSource;
+
+    private CoalescingMemberRepository coalescing;
+
+    @TestConfiguration
+    static class testConfig {
+
+        private final DataSource dataSource;
+
+        public testConfig(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        @Bean
+        MemberRepository memberRepository() {
+            return new MemberRepositoryV5(dataSource);
+        }
+    }
+
+    @BeforeEach
+    void before() {
+        coalescing = new CoalescingMemberRepository(memberRepository, 2, 64);
+        for (int i = 0; i < MEMBERS; i++) {
+            memberRepository.save(new Member("member" + i, i * 1000));
+        }
+    }
+
+    @AfterEach
+    void after() {
+        coalescing.close();
+        for (int i = 0; i < MEMBERS; i++) {
+            memberRepository.delete("member" + i);
+        }
+    }
+
+    @Test
+    void coalesce() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int seed = t;
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < LOOKUPS_PER_THREAD; i++) {
+                    int n = (seed + i) % MEMBERS;
+                    assertThat(coalescing.findById("member" + n).getMoney()).isEqualTo(n * 1000);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        log.info("requests = {}, queries = {}", coalescing.getRequestCount(), coalescing.getQueryCount());
+        assertThat(coalescing.getRequestCount()).isEqualTo(THREADS * LOOKUPS_PER_THREAD);
+        assertThat(coalescing.getQueryCount()).isLessThan(coalescing.getRequestCount() / 4);
+    }
+
+    @Test
+    void miss() {
+        assertThatThrownBy(() -> coalescing.findById("missing"))
+                .isInstanceOf(EmptyResultDataAccessException.class);
+    }
+
+    @Test
+    void closedFallsBackToTarget() {
+        coalescing.close();
+
+        assertThat(coalescing.findById("member1").getMoney()).isEqualTo(1000);
+        assertThatThrownBy(() -> coalescing.findById("missing"))
+                .isInstanceOf(EmptyResultDataAccessException.class);
+    }
+
+    @Test
+    void readAfterWriteDoesNotJoinEarlierRead() throws Exception {
+        CountDownLatch loaded = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean first = new AtomicBoolean(true);
+        // 첫 번째 findAllById는 읽은 뒤에 release까지 기다린다.
+        MemberRepository slowTarget = new MemberRepositoryV5(dataSource) {
+            @Override
+            public Map<String, Member> findAllById(Collection<String> memberIds) {
+                Map<String, Member> members = super.findAllById(memberIds);
+                if (first.compareAndSet(true, false)) {
+                    loaded.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return members;
+            }
+        };
+
+        try (CoalescingMemberRepository repository = new CoalescingMemberRepository(slowTarget, 2, 64)) {
+            CompletableFuture<Member> beforeWrite = CompletableFuture.supplyAsync(() -> repository.findById("member1"));
+            loaded.await(5, TimeUnit.SECONDS);
+
+            repository.update("member1", 5000);
+            CompletableFuture<Member> afterWrite = CompletableFuture.supplyAsync(() -> repository.findById("member1"));
+            while (repository.getRequestCount() < 2) {
+                Thread.sleep(1);
+            }
+            // 변경 전에 시작한 조회가 끝나기 전에 들어온 조회도 변경 뒤의 값을 읽는다.
+            release.countDown();
+
+            assertThat(beforeWrite.get(5, TimeUnit.SECONDS).getMoney()).isEqualTo(1000);
+            assertThat(afterWrite.get(5, TimeUnit.SECONDS).getMoney()).isEqualTo(5000);
+        }
+    }
+}
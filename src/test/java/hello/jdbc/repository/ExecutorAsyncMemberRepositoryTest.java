@@ -0,0 +1,127 @@
+package hello.jdbc.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+@SpringBootTest
+class ExecutorAsyncMemberRepositoryTest {
+
+    public static final String MEMBER_A = "memberA";
+    public static final String MEMBER_B = "memberB";
+
+    @Autowired private MemberRepository memberRepository;
+    @Autowired private DataSource dataSource;
+    @Autowired private PlatformTransactionManager transactionManager;
+
+    @TestConfiguration
+    static class testConfig {
+
+        private final DataSource dataSource;
+
+        public testConfig(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        @Bean
+        MemberRepository memberRepository() {
+            return new MemberRepositoryV5(dataSource);
+        }
+    }
+
+    @AfterEach
+    void after() {
+        memberRepository.delete(MEMBER_A);
+        memberRepository.delete(MEMBER_B);
+    }
+
+    @Test
+    void fanOut() throws Exception {
+        try (ExecutorAsyncMemberRepository repository = new ExecutorAsyncMemberRepository(memberRepository, 4, 100)) {
+            CompletableFuture.allOf(
+                    repository.saveAsync(new Member(MEMBER_A, 10000)),
+                    repository.saveAsync(new Member(MEMBER_B, 20000))).get(5, TimeUnit.SECONDS);
+
+            CompletableFuture<Member> a = repository.findByIdAsync(MEMBER_A);
+            CompletableFuture<Member> b = repository.findByIdAsync(MEMBER_B);
+            int total = a.thenCombine(b, (memberA, memberB) -> memberA.getMoney() + memberB.getMoney()).get(5, TimeUnit.SECONDS);
+
+            assertThat(total).isEqualTo(30000);
+            assertThatThrownBy(() -> repository.findByIdAsync("missing").get(5, TimeUnit.SECONDS))
+                    .hasCauseInstanceOf(EmptyResultDataAccessException.class);
+        }
+    }
+
+    @Test
+    void reject() throws Exception {
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        CountDownLatch blocked = new CountDownLatch(1);
+        MemberRepository slow = new MemberRepositoryV5(dataSource) {
+            @Override
+            public Member findById(String memberId) {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return memberRepository.findById(memberId);
+            }
+        };
+
+        try (ExecutorAsyncMemberRepository abort = new ExecutorAsyncMemberRepository(slow, 1, 1)) {
+            CompletableFuture<Member> running = abort.findByIdAsync(MEMBER_A);
+            CompletableFuture<Member> queued = abort.findByIdAsync(MEMBER_A);
+            CompletableFuture<Member> rejected = abort.findByIdAsync(MEMBER_A);
+
+            assertThat(abort.getQueueDepth()).isEqualTo(1);
+            assertThat(abort.getRejectedCount()).isEqualTo(1);
+            assertThatThrownBy(rejected::join).hasCauseInstanceOf(RejectedExecutionException.class);
+
+            blocked.countDown();
+            assertThat(running.get(5, TimeUnit.SECONDS).getMoney()).isEqualTo(10000);
+            assertThat(queued.get(5, TimeUnit.SECONDS).getMoney()).isEqualTo(10000);
+        }
+    }
+
+    @Test
+    void poolSizeFromDataSource() {
+        HikariDataSource hikari = (HikariDataSource) dataSource;
+        try (ExecutorAsyncMemberRepository repository = new ExecutorAsyncMemberRepository(memberRepository, hikari, 100)) {
+            assertThat(repository.getPoolSize()).isEqualTo(hikari.getMaximumPoolSize());
+        }
+        assertThatThrownBy(() -> new ExecutorAsyncMemberRepository(memberRepository, 0, 100))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void rejectInsideTransaction() {
+        try (ExecutorAsyncMemberRepository repository = new ExecutorAsyncMemberRepository(memberRepository, 4, 100)) {
+            CompletableFuture<Member> saved = new TransactionTemplate(transactionManager)
+                    .execute(status -> repository.saveAsync(new Member(MEMBER_A, 10000)));
+
+            // 호출자의 트랜잭션 밖에서 커밋되는 쓰기는 거절한다.
+            assertThatThrownBy(saved::join).hasCauseInstanceOf(IllegalStateException.class);
+            assertThatThrownBy(() -> memberRepository.findById(MEMBER_A))
+                    .isInstanceOf(EmptyResultDataAccessException.class);
+        }
+    }
+}
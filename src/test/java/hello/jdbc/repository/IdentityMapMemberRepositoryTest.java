@@ -0,0 +1,146 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 트랜잭션 범위 identity map
+ */
+@SpringBootTest
+class IdentityMapMemberRepositoryTest {
+
+    public static final String MEMBER_A = "memberA";
+    public static final String MEMBER_B = "memberB";
+
+    @Autowired private DataSource dataSource;
+    @Autowired private PlatformTransactionManager transactionManager;
+
+    private final AtomicInteger queries = new AtomicInteger();
+    private MemberRepositoryV5 target;
+    private IdentityMapMemberRepository repository;
+    private TransactionTemplate txTemplate;
+
+    @BeforeEach
+    void before() {
+        target = new MemberRepositoryV5(dataSource) {
+            @Override
+            public Member findById(String memberId) {
+                queries.incrementAndGet();
+                return super.findById(memberId);
+            }
+        };
+        repository = new IdentityMapMemberRepository(target);
+        txTemplate = new TransactionTemplate(transactionManager);
+
+        target.save(new Member(MEMBER_A, 10000));
+        target.save(new Member(MEMBER_B, 10000));
+    }
+
+    @AfterEach
+    void after() {
+        target.delete(MEMBER_A);
+        target.delete(MEMBER_B);
+    }
+
+    @Test
+    void sameInstanceWithoutQuery() {
+        txTemplate.executeWithoutResult(status -> {
+            Member first = repository.findById(MEMBER_A);
+            Member second = repository.findById(MEMBER_A);
+
+            assertThat(second).isSameAs(first);
+            assertThat(queries.get()).isEqualTo(1);
+        });
+    }
+
+    @Test
+    void writesSyncCachedInstance() {
+        txTemplate.executeWithoutResult(status -> {
+            Member memberA = repository.findById(MEMBER_A);
+            Member memberB = repository.findById(MEMBER_B);
+
+            repository.transfer(MEMBER_A, MEMBER_B, 2000);
+            repository.addMoney(MEMBER_A, 500);
+            repository.update(MEMBER_B, 7000);
+
+            assertThat(memberA.getMoney()).isEqualTo(8500);
+            assertThat(memberA.getVersion()).isEqualTo(2);
+            assertThat(memberB.getMoney()).isEqualTo(7000);
+            assertThat(memberB.getVersion()).isEqualTo(2);
+            assertThat(repository.findById(MEMBER_A)).isSameAs(memberA);
+            assertThat(queries.get()).isEqualTo(2);
+        });
+
+        Member storedA = target.findById(MEMBER_A);
+        Member storedB = target.findById(MEMBER_B);
+        assertThat(storedA.getMoney()).isEqualTo(8500);
+        assertThat(storedA.getVersion()).isEqualTo(2);
+        assertThat(storedB.getMoney()).isEqualTo(7000);
+        assertThat(storedB.getVersion()).isEqualTo(2);
+    }
+
+    @Test
+    void clearedOnCommit() {
+        Member committed = txTemplate.execute(status -> repository.findById(MEMBER_A));
+        assertThat(TransactionSynchronizationManager.getResource(repository)).isNull();
+
+        txTemplate.executeWithoutResult(status -> {
+            assertThat(repository.findById(MEMBER_A)).isNotSameAs(committed);
+            assertThat(queries.get()).isEqualTo(2);
+        });
+    }
+
+    @Test
+    void clearedOnRollback() {
+        Member rolledBack = txTemplate.execute(status -> {
+            Member member = repository.findById(MEMBER_A);
+            repository.update(MEMBER_A, 1);
+            status.setRollbackOnly();
+            return member;
+        });
+        assertThat(rolledBack.getMoney()).isEqualTo(1);
+        assertThat(TransactionSynchronizationManager.getResource(repository)).isNull();
+
+        txTemplate.executeWithoutResult(status -> {
+            Member member = repository.findById(MEMBER_A);
+            assertThat(member).isNotSameAs(rolledBack);
+            assertThat(member.getMoney()).isEqualTo(10000);
+        });
+    }
+
+    @Test
+    void requiresNewGetsItsOwnMap() {
+        TransactionTemplate requiresNew = new TransactionTemplate(transactionManager);
+        requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        txTemplate.executeWithoutResult(status -> {
+            Member outer = repository.findById(MEMBER_A);
+            repository.update(MEMBER_A, 1);
+
+            // 안쪽 트랜잭션은 바깥의 커밋되지 않은 인스턴스를 보지 않고 자기 커넥션으로 읽는다.
+            Member inner = requiresNew.execute(innerStatus -> repository.findById(MEMBER_A));
+            assertThat(inner).isNotSameAs(outer);
+            assertThat(inner.getMoney()).isEqualTo(10000);
+            assertThat(queries.get()).isEqualTo(2);
+
+            // 재개된 바깥 트랜잭션은 자기 캐시를 그대로 쓴다.
+            assertThat(repository.findById(MEMBER_A)).isSameAs(outer);
+            assertThat(outer.getMoney()).isEqualTo(1);
+            assertThat(queries.get()).isEqualTo(2);
+            status.setRollbackOnly();
+        });
+    }
+}
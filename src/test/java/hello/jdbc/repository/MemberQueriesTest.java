@@ -0,0 +1,148 @@
+package hello.jdbc.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MemberQueriesTest {
+
+    static final int MEMBERS = 10;
+
+    HikariDataSource dataSource;
+    MemberRepositoryV5 repository;
+    List<String> memberIds;
+
+    @BeforeEach
+    void beforeEach() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(URL);
+        dataSource.setUsername(USERNAME);
+        dataSource.setPassword(PASSWORD);
+
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        repository = new MemberRepositoryV5(dataSource);
+
+        memberIds = IntStream.range(0, MEMBERS)
+                .mapToObj(i -> String.format("q%03d", i))
+                .collect(Collectors.toList());
+        repository.saveAll(memberIds.stream().map(id -> new Member(id, 10000)).collect(Collectors.toList()));
+    }
+
+    @AfterEach
+    void after() {
+        repository.deleteAll(memberIds);
+        dataSource.close();
+    }
+
+    @Test
+    void shapeOf() {
+        assertThat(MemberQueries.shapeOf(1)).isEqualTo(0);
+        assertThat(MemberQueries.shapeOf(2)).isEqualTo(1);
+        assertThat(MemberQueries.shapeOf(3)).isEqualTo(2);
+        assertThat(MemberQueries.shapeOf(4)).isEqualTo(2);
+        assertThat(MemberQueries.shapeOf(5)).isEqualTo(3);
+        assertThat(MemberQueries.shapeOf(MemberQueries.MAX_IN_SIZE)).isEqualTo(8);
+    }
+
+    @Test
+    void paddedInList() throws Exception {
+        // 256 + 44 -> IN (256개), IN (64개)
+        List<String> ids = withMissing(300);
+        SqlRecorder recorder = new SqlRecorder();
+
+        Map<String, Member> found;
+        try (Connection conn = dataSource.getConnection()) {
+            found = MemberQueries.findAllById(recorder.wrap(conn), ids);
+        }
+
+        assertThat(found).containsOnlyKeys(memberIds);
+        assertThat(recorder.sqls).allMatch(sql -> sql.contains(" in ("));
+        assertThat(recorder.sqls).extracting(recorder::countParameters).containsExactly(256L, 64L);
+    }
+
+    @Test
+    void tempTableJoin() throws Exception {
+        List<String> ids = withMissing(MemberQueries.TEMP_TABLE_THRESHOLD + 1);
+        SqlRecorder recorder = new SqlRecorder();
+
+        try (Connection conn = dataSource.getConnection()) {
+            Map<String, Member> found = MemberQueries.findAllById(recorder.wrap(conn), ids);
+
+            assertThat(found).containsOnlyKeys(memberIds);
+            assertThat(recorder.sqls).noneMatch(sql -> sql.contains(" in ("));
+            assertThat(recorder.sqls).anyMatch(sql -> sql.contains("join member_id_tmp"));
+
+            // 커넥션에 키가 남지 않는다.
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("select count(*) from member_id_tmp")) {
+                rs.next();
+                assertThat(rs.getInt(1)).isZero();
+            }
+        }
+    }
+
+    @Test
+    void streamCloseReleasesAndResetsLazy() throws Exception {
+        SqlRecorder recorder = new SqlRecorder();
+        AtomicBoolean released = new AtomicBoolean();
+
+        try (Connection conn = dataSource.getConnection()) {
+            List<String> read;
+            try (Stream<Member> members = MemberQueries.streamAll(recorder.wrap(conn), 3,
+                    RuntimeException::new, () -> released.set(true))) {
+                // 끝까지 읽지 않고 닫는다.
+                read = members.map(Member::getMemberId).limit(2).collect(Collectors.toList());
+                assertThat(released).isFalse();
+            }
+
+            assertThat(read).hasSize(2);
+            assertThat(released).isTrue();
+            assertThat(recorder.sqls).first().isEqualTo("set lazy_query_execution 1");
+            assertThat(recorder.sqls).last().isEqualTo("set lazy_query_execution 0");
+            for (Statement statement : recorder.statements) {
+                assertThat(statement.isClosed()).isTrue();
+            }
+        }
+    }
+
+    @Test
+    void streamAllReturnsConnectionOnClose() {
+        List<String> read;
+        try (Stream<Member> members = repository.streamAll()) {
+            assertThat(dataSource.getHikariPoolMXBean().getActiveConnections()).isEqualTo(1);
+            read = members.map(Member::getMemberId).filter(memberIds::contains).collect(Collectors.toList());
+        }
+
+        assertThat(read).containsExactlyInAnyOrderElementsOf(memberIds);
+        assertThat(dataSource.getHikariPoolMXBean().getActiveConnections()).isZero();
+    }
+
+    /**
+     * 있는 회원 MEMBERS 명 + 없는 id로 size 개를 만든다.
+     */
+    private List<String> withMissing(int size) {
+        List<String> ids = new ArrayList<>(memberIds);
+        for (int i = 0; ids.size() < size; i++) {
+            ids.add(String.format("x%05d", i));
+        }
+        return ids;
+    }
+}
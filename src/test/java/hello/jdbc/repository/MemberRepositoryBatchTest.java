@@ -0,0 +1,102 @@
+package hello.jdbc.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.ex.MyBatchUpdateException;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.catchThrowableOfType;
+
+/**
+ * saveAll / updateAll / deleteAll - 행 단위 결과 (V4_2)
+ * MemberRepositoryV5BatchTest가 같은 테스트를 V5로 실행한다.
+ */
+@Slf4j
+class MemberRepositoryBatchTest {
+
+    HikariDataSource dataSource;
+    MemberRepository repository;
+
+    @BeforeEach
+    void beforeEach() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(URL);
+        dataSource.setUsername(USERNAME);
+        dataSource.setPassword(PASSWORD);
+
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        repository = createRepository(dataSource, 2);
+    }
+
+    MemberRepository createRepository(DataSource dataSource, int batchSize) {
+        MemberRepositoryV4_2 repository = new MemberRepositoryV4_2(dataSource);
+        repository.setBatchSize(batchSize);
+        return repository;
+    }
+
+    @AfterEach
+    void after() {
+        repository.deleteAll(List.of("batchA", "batchB", "batchC"));
+        dataSource.close();
+    }
+
+    @Test
+    void batchCrud() {
+        repository.saveAll(List.of(new Member("batchA", 10000), new Member("batchB", 20000), new Member("batchC", 30000)));
+
+        repository.updateAll(List.of(new Member("batchA", 1000), new Member("batchC", 3000)));
+
+        assertThat(repository.findById("batchA").getMoney()).isEqualTo(1000);
+        assertThat(repository.findById("batchB").getMoney()).isEqualTo(20000);
+        assertThat(repository.findById("batchC").getMoney()).isEqualTo(3000);
+    }
+
+    @Test
+    void duplicateKeyReportedPerRow() {
+        repository.save(new Member("batchB", 10000));
+
+        MyBatchUpdateException e = catchThrowableOfType(() -> repository.saveAll(
+                List.of(new Member("batchA", 10000), new Member("batchB", 10000), new Member("batchC", 10000))),
+                MyBatchUpdateException.class);
+
+        log.info("batch error", e);
+        assertThat(e.getSucceededIds()).containsExactly("batchA", "batchC");
+        assertThat(e.getFailures()).containsOnlyKeys("batchB");
+        assertThat(e.getFailures().get("batchB")).isInstanceOf(DuplicateKeyException.class);
+    }
+
+    @Test
+    void updateMissingRowReportedPerRow() {
+        repository.saveAll(List.of(new Member("batchA", 10000), new Member("batchC", 30000)));
+
+        MyBatchUpdateException e = catchThrowableOfType(() -> repository.updateAll(
+                List.of(new Member("batchA", 1000), new Member("batchB", 2000), new Member("batchC", 3000))),
+                MyBatchUpdateException.class);
+
+        assertThat(e.getSucceededIds()).containsExactly("batchA", "batchC");
+        assertThat(e.getFailures()).containsOnlyKeys("batchB");
+        assertThat(e.getFailures().get("batchB")).isInstanceOf(NoSuchElementException.class);
+        assertThat(repository.findById("batchC").getMoney()).isEqualTo(3000);
+    }
+
+    @Test
+    void invalidBatchSize() {
+        assertThatThrownBy(() -> createRepository(dataSource, 0))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> createRepository(dataSource, -1))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
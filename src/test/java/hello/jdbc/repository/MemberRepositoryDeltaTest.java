@@ -0,0 +1,135 @@
+package hello.jdbc.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.ex.InsufficientMoneyException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * addMoney, transfer - 조회 없이 데이터베이스에서 더하고 빼기 (V4_1)
+ * MemberRepositoryV4_2DeltaTest, MemberRepositoryV5DeltaTest가 같은 테스트를 V4_2, V5로 실행한다.
+ */
+class MemberRepositoryDeltaTest {
+
+    public static final String MEMBER_A = "deltaA";
+    public static final String MEMBER_B = "deltaB";
+    public static final String MEMBER_MISSING = "deltaX";
+
+    HikariDataSource dataSource;
+    MemberRepository repository;
+
+    @BeforeEach
+    void beforeEach() {
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(URL);
+        dataSource.setUsername(USERNAME);
+        dataSource.setPassword(PASSWORD);
+
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        repository = createRepository(dataSource);
+        repository.saveAll(List.of(new Member(MEMBER_A, 10000), new Member(MEMBER_B, 10000)));
+    }
+
+    MemberRepository createRepository(DataSource dataSource) {
+        return new MemberRepositoryV4_1(dataSource);
+    }
+
+    @AfterEach
+    void after() {
+        repository.deleteAll(List.of(MEMBER_A, MEMBER_B));
+        dataSource.close();
+    }
+
+    @Test
+    void addMoney() {
+        repository.addMoney(MEMBER_A, -3000);
+        repository.addMoney(MEMBER_B, 3000);
+
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(7000);
+        assertThat(repository.findById(MEMBER_B).getMoney()).isEqualTo(13000);
+        assertThat(repository.findById(MEMBER_A).getVersion()).isEqualTo(1);
+    }
+
+    @Test
+    void addMoneyMissingMember() {
+        assertThatThrownBy(() -> repository.addMoney(MEMBER_MISSING, 1000))
+                .isInstanceOf(NoSuchElementException.class);
+    }
+
+    @Test
+    void addMoneyGuarded() {
+        repository.addMoney(MEMBER_A, -10000, 10000);
+        assertThat(repository.findById(MEMBER_A).getMoney()).isZero();
+
+        // 잔액이 모자라면 변경하지 않는다.
+        assertThatThrownBy(() -> repository.addMoney(MEMBER_A, -1, 1))
+                .isInstanceOf(InsufficientMoneyException.class);
+        assertThat(repository.findById(MEMBER_A).getMoney()).isZero();
+    }
+
+    @Test
+    void addMoneyGuardedMissingMember() {
+        assertThatThrownBy(() -> repository.addMoney(MEMBER_MISSING, -1000, 1000))
+                .isInstanceOf(InsufficientMoneyException.class);
+    }
+
+    @Test
+    void transfer() {
+        repository.transfer(MEMBER_A, MEMBER_B, 2000);
+
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(8000);
+        assertThat(repository.findById(MEMBER_B).getMoney()).isEqualTo(12000);
+    }
+
+    @Test
+    void transferMissingMember() {
+        // count(*) = 2 조건 때문에 있는 회원도 변경되지 않는다.
+        assertThatThrownBy(() -> repository.transfer(MEMBER_A, MEMBER_MISSING, 2000))
+                .isInstanceOf(NoSuchElementException.class);
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    void transferSameMember() {
+        assertThatThrownBy(() -> repository.transfer(MEMBER_A, MEMBER_A, 2000))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> repository.transferIfSufficient(MEMBER_A, MEMBER_A, 2000))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void transferIfSufficient() {
+        repository.transferIfSufficient(MEMBER_A, MEMBER_B, 10000);
+
+        assertThat(repository.findById(MEMBER_A).getMoney()).isZero();
+        assertThat(repository.findById(MEMBER_B).getMoney()).isEqualTo(20000);
+    }
+
+    @Test
+    void transferIfSufficientInsufficient() {
+        assertThatThrownBy(() -> repository.transferIfSufficient(MEMBER_A, MEMBER_B, 10001))
+                .isInstanceOf(InsufficientMoneyException.class);
+
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+        assertThat(repository.findById(MEMBER_B).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    void transferIfSufficientMissingMember() {
+        assertThatThrownBy(() -> repository.transferIfSufficient(MEMBER_A, MEMBER_MISSING, 2000))
+                .isInstanceOf(InsufficientMoneyException.class);
+        assertThat(repository.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+    }
+}
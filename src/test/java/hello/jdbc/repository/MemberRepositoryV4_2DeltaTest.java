@@ -0,0 +1,14 @@
+package hello.jdbc.repository;
+
+import javax.sql.DataSource;
+
+/**
+ * MemberRepositoryDeltaTest를 V4_2로 실행한다.
+ */
+class MemberRepositoryV4_2DeltaTest extends MemberRepositoryDeltaTest {
+
+    @Override
+    MemberRepository createRepository(DataSource dataSource) {
+        return new MemberRepositoryV4_2(dataSource);
+    }
+}
@@ -0,0 +1,16 @@
+package hello.jdbc.repository;
+
+import javax.sql.DataSource;
+
+/**
+ * MemberRepositoryBatchTest를 V5(JdbcTemplate)로 실행한다.
+ */
+class MemberRepositoryV5BatchTest extends MemberRepositoryBatchTest {
+
+    @Override
+    MemberRepository createRepository(DataSource dataSource, int batchSize) {
+        MemberRepositoryV5 repository = new MemberRepositoryV5(dataSource);
+        repository.setBatchSize(batchSize);
+        return repository;
+    }
+}
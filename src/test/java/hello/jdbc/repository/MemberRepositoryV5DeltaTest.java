@@ -0,0 +1,14 @@
+package hello.jdbc.repository;
+
+import javax.sql.DataSource;
+
+/**
+ * MemberRepositoryDeltaTest를 V5(JdbcTemplate)로 실행한다.
+ */
+class MemberRepositoryV5DeltaTest extends MemberRepositoryDeltaTest {
+
+    @Override
+    MemberRepository createRepository(DataSource dataSource) {
+        return new MemberRepositoryV5(dataSource);
+    }
+}
@@ -0,0 +1,98 @@
+package hello.jdbc.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static hello.jdbc.connection.ConnectionConst.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@Slf4j
+class MemberRepositoryV5Test {
+
+    MemberRepositoryV5 repository;
+    List<String> memberIds;
+
+    @BeforeEach
+    void beforeEach() {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(URL);
+        dataSource.setUsername(USERNAME);
+        dataSource.setPassword(PASSWORD);
+
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        repository = new MemberRepositoryV5(dataSource);
+
+        memberIds = IntStream.range(0, 25)
+                .mapToObj(i -> String.format("page%02d", i))
+                .collect(Collectors.toList());
+        repository.saveAll(memberIds.stream().map(id -> new Member(id, 10000)).collect(Collectors.toList()));
+    }
+
+    @AfterEach
+    void after() {
+        repository.deleteAll(memberIds);
+    }
+
+    @Test
+    void findPage() {
+        List<String> found = new ArrayList<>();
+        String token = null;
+        int pages = 0;
+
+        do {
+            MemberPage page = repository.findPage(token, 10);
+            page.getMembers().stream()
+                    .map(Member::getMemberId)
+                    .filter(id -> id.startsWith("page"))
+                    .forEach(found::add);
+            token = page.getNextToken();
+            pages++;
+        } while (token != null);
+
+        log.info("pages = {}", pages);
+        assertThat(found).containsExactlyElementsOf(memberIds);
+    }
+
+    @Test
+    void invalidPageSize() {
+        assertThatThrownBy(() -> repository.findPage(null, 0))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> repository.findPage(null, Integer.MAX_VALUE))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void updateWithVersion() {
+        String memberId = memberIds.get(0);
+        Member member = repository.findById(memberId);
+
+        repository.updateWithVersion(memberId, 5000, member.getVersion());
+        assertThat(repository.findById(memberId).getVersion()).isEqualTo(member.getVersion() + 1);
+
+        // 이미 version이 바뀌었으므로 실패
+        assertThatThrownBy(() -> repository.updateWithVersion(memberId, 1000, member.getVersion()))
+                .isInstanceOf(OptimisticLockingFailureException.class);
+        assertThat(repository.findById(memberId).getMoney()).isEqualTo(5000);
+    }
+
+    @Test
+    void findAllById() {
+        List<String> ids = new ArrayList<>(memberIds.subList(0, 5));
+        ids.add("noMember");
+
+        assertThat(repository.findAllById(ids)).containsOnlyKeys(memberIds.subList(0, 5));
+    }
+}
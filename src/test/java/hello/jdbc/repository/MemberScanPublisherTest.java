@@ -0,0 +1,188 @@
+package hello.jdbc.repository;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+class MemberScanPublisherTest {
+
+    static final int COUNT = 100;
+
+    @Autowired private MemberRepository memberRepository;
+    @Autowired private HikariDataSource dataSource;
+
+    private ExecutorService executor;
+    private final List<Member> members = new ArrayList<>();
+
+    @TestConfiguration
+    static class testConfig {
+
+        private final DataSource dataSource;
+
+        public testConfig(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        @Bean
+        MemberRepository memberRepository() {
+            return new MemberRepositoryV5(dataSource);
+        }
+    }
+
+    @BeforeEach
+    void before() {
+        executor = Executors.newFixedThreadPool(2);
+        for (int i = 0; i < COUNT; i++) {
+            members.add(new Member("scan" + i, i));
+        }
+        memberRepository.saveAll(members);
+    }
+
+    @AfterEach
+    void after() {
+        executor.shutdown();
+        memberRepository.deleteAll(members.stream().map(Member::getMemberId).collect(Collectors.toList()));
+    }
+
+    @Test
+    void requestInChunks() throws Exception {
+        MemberScanPublisher publisher = new MemberScanPublisher(memberRepository, executor, 16);
+        CompletableFuture<Integer> done = new CompletableFuture<>();
+
+        publisher.subscribe(new Flow.Subscriber<>() {
+            private Flow.Subscription subscription;
+            private int received;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(10);
+            }
+
+            @Override
+            public void onNext(Member item) {
+                if (++received % 10 == 0) {
+                    subscription.request(10);
+                }
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                done.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                done.complete(received);
+            }
+        });
+
+        assertThat(done.get(10, TimeUnit.SECONDS)).isGreaterThanOrEqualTo(COUNT);
+        assertThat(dataSource.getHikariPoolMXBean().getActiveConnections()).isZero();
+    }
+
+    @Test
+    void cancelReleasesConnection() throws Exception {
+        MemberScanPublisher publisher = new MemberScanPublisher(memberRepository, executor, 16);
+        AtomicInteger received = new AtomicInteger();
+        CountDownLatch firstChunk = new CountDownLatch(5);
+        Flow.Subscription[] holder = new Flow.Subscription[1];
+
+        publisher.subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                holder[0] = subscription;
+                subscription.request(5);
+            }
+
+            @Override
+            public void onNext(Member item) {
+                received.incrementAndGet();
+                firstChunk.countDown();
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+
+        assertThat(firstChunk.await(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(dataSource.getHikariPoolMXBean().getActiveConnections()).isEqualTo(1);
+
+        holder[0].cancel();
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        assertThat(received.get()).isEqualTo(5);
+        assertThat(dataSource.getHikariPoolMXBean().getActiveConnections()).isZero();
+    }
+
+    @Test
+    void onNextExceptionCancels() throws Exception {
+        MemberScanPublisher publisher = new MemberScanPublisher(memberRepository, executor, 16);
+        AtomicInteger received = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+
+        publisher.subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(10);
+            }
+
+            @Override
+            public void onNext(Member item) {
+                if (received.incrementAndGet() == 3) {
+                    throw new IllegalStateException("구독자 예외");
+                }
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                errors.incrementAndGet();
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        assertThat(received.get()).isEqualTo(3);
+        assertThat(errors.get()).isZero();
+        assertThat(dataSource.getHikariPoolMXBean().getActiveConnections()).isZero();
+    }
+
+    @Test
+    void invalidChunkSize() {
+        assertThatThrownBy(() -> new MemberScanPublisher(memberRepository, executor, 0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,129 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.ex.InsufficientMoneyException;
+import hello.jdbc.service.MemberServiceV4;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 잔액 분할 - MemberServiceV4를 그대로 사용
+ */
+@Slf4j
+@SpringBootTest
+class ShardedBalanceMemberRepositoryTest {
+
+    public static final String MEMBER_A = "memberA";
+    public static final String MERCHANT = "merchant";
+
+    @Autowired private ShardedBalanceMemberRepository memberRepository;
+    @Autowired private MemberServiceV4 memberService;
+    @Autowired private DataSource dataSource;
+    @Autowired private PlatformTransactionManager transactionManager;
+
+    @TestConfiguration
+    static class testConfig {
+
+        private final DataSource dataSource;
+        private final PlatformTransactionManager transactionManager;
+
+        public testConfig(DataSource dataSource, PlatformTransactionManager transactionManager) {
+            this.dataSource = dataSource;
+            this.transactionManager = transactionManager;
+        }
+
+        @Bean
+        ShardedBalanceMemberRepository memberRepository() {
+            return new ShardedBalanceMemberRepository(new MemberRepositoryV5(dataSource), dataSource,
+                    transactionManager, Set.of(MERCHANT), 4);
+        }
+
+        @Bean
+        MemberServiceV4 memberServiceV4() {
+            return new MemberServiceV4(memberRepository());
+        }
+    }
+
+    @BeforeEach
+    void before() {
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MERCHANT, 0));
+        memberRepository.initShards();
+    }
+
+    @AfterEach
+    void after() {
+        memberRepository.delete(MEMBER_A);
+        memberRepository.delete(MERCHANT);
+    }
+
+    @Test
+    void creditsAreSpreadAndAggregated() {
+        for (int i = 0; i < 20; i++) {
+            memberService.accountTransfer(MEMBER_A, MERCHANT, 100);
+        }
+
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(8000);
+        assertThat(memberRepository.findById(MERCHANT).getMoney()).isEqualTo(2000);
+
+        Integer shardsUsed = new JdbcTemplate(dataSource).queryForObject(
+                "select count(*) from member_balance_shard where member_id = ? and money > 0", Integer.class, MERCHANT);
+        log.info("shards used = {}", shardsUsed);
+        assertThat(shardsUsed).isGreaterThan(1);
+    }
+
+    @Test
+    void updateWithVersionFoldsShards() {
+        memberService.accountTransfer(MEMBER_A, MERCHANT, 3000);
+        Member merchant = memberRepository.findById(MERCHANT);
+
+        memberRepository.updateWithVersion(MERCHANT, 5000, merchant.getVersion());
+
+        Member updated = memberRepository.findById(MERCHANT);
+        assertThat(updated.getMoney()).isEqualTo(5000);
+        assertThat(updated.getVersion()).isEqualTo(merchant.getVersion() + 1);
+        Integer shardSum = new JdbcTemplate(dataSource).queryForObject(
+                "select coalesce(sum(money), 0) from member_balance_shard where member_id = ?", Integer.class, MERCHANT);
+        assertThat(shardSum).isEqualTo(0);
+
+        // 이전 version으로는 변경할 수 없고, 값도 그대로다.
+        assertThatThrownBy(() -> memberRepository.updateWithVersion(MERCHANT, 0, merchant.getVersion()))
+                .isInstanceOf(OptimisticLockingFailureException.class);
+        assertThat(memberRepository.findById(MERCHANT).getMoney()).isEqualTo(5000);
+    }
+
+    @Test
+    void invalidShardCount() {
+        assertThatThrownBy(() -> new ShardedBalanceMemberRepository(new MemberRepositoryV5(dataSource), dataSource,
+                transactionManager, Set.of(MERCHANT), 0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void guardedDebitUsesTotal() {
+        memberService.accountTransfer(MEMBER_A, MERCHANT, 3000);
+
+        // base는 0이지만 shard 합계가 3000이므로 출금할 수 있다.
+        memberRepository.transferIfSufficient(MERCHANT, MEMBER_A, 2500);
+        assertThat(memberRepository.findById(MERCHANT).getMoney()).isEqualTo(500);
+
+        assertThatThrownBy(() -> memberRepository.transferIfSufficient(MERCHANT, MEMBER_A, 1000))
+                .isInstanceOf(InsufficientMoneyException.class);
+        assertThat(memberRepository.findById(MERCHANT).getMoney()).isEqualTo(500);
+    }
+}
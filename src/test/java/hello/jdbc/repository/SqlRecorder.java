@@ -0,0 +1,59 @@
+package hello.jdbc.repository;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 커넥션을 감싸서 prepareStatement, Statement.execute로 넘어간 sql과 만들어진 Statement를 기록한다.
+ */
+class SqlRecorder {
+
+    final List<String> sqls = new ArrayList<>();
+    final List<Statement> statements = new ArrayList<>();
+
+    Connection wrap(Connection target) {
+        return proxy(Connection.class, target, (method, args, result) -> {
+            if (method.getName().equals("prepareStatement")) {
+                sqls.add((String) args[0]);
+                statements.add((Statement) result);
+            } else if (method.getName().equals("createStatement")) {
+                Statement statement = (Statement) result;
+                statements.add(statement);
+                return proxy(Statement.class, statement, (stmtMethod, stmtArgs, stmtResult) -> {
+                    if (stmtMethod.getName().startsWith("execute") && stmtArgs != null && stmtArgs[0] instanceof String) {
+                        sqls.add((String) stmtArgs[0]);
+                    }
+                    return stmtResult;
+                });
+            }
+            return result;
+        });
+    }
+
+    long countParameters(String sql) {
+        return sql.chars().filter(c -> c == '?').count();
+    }
+
+
+    @FunctionalInterface
+    private interface AfterCall {
+        Object apply(Method method, Object[] args, Object result);
+    }
+
+    private static <T> T proxy(Class<T> type, T target, AfterCall afterCall) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            try {
+                return afterCall.apply(method, args, method.invoke(target, args));
+            } catch (InvocationTargetException e) {
+                throw e.getTargetException();
+            }
+        };
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+}
@@ -0,0 +1,158 @@
+package hello.jdbc.repository;
+
+import hello.jdbc.domain.Member;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Unit of Work - 변경 감지 + 커밋 직전 배치 flush
+ */
+@SpringBootTest
+class UnitOfWorkMemberRepositoryTest {
+
+    public static final String MEMBER_A = "memberA";
+    public static final String MEMBER_B = "memberB";
+
+    @Autowired private DataSource dataSource;
+    @Autowired private PlatformTransactionManager transactionManager;
+
+    // target.updateAll 호출마다 보낸 memberId 목록
+    private final List<List<String>> flushed = new ArrayList<>();
+    private MemberRepositoryV5 target;
+    private UnitOfWorkMemberRepository repository;
+    private TransactionTemplate txTemplate;
+
+    @BeforeEach
+    void before() {
+        target = new MemberRepositoryV5(dataSource) {
+            @Override
+            public void updateAll(List<Member> members) {
+                flushed.add(MemberBatchSupport.ids(members, Member::getMemberId));
+                super.updateAll(members);
+            }
+
+            @Override
+            public void update(String memberId, int money) {
+                throw new AssertionError("update must be deferred");
+            }
+        };
+        repository = new UnitOfWorkMemberRepository(target);
+        txTemplate = new TransactionTemplate(transactionManager);
+
+        target.save(new Member(MEMBER_A, 10000));
+        target.save(new Member(MEMBER_B, 10000));
+    }
+
+    @AfterEach
+    void after() {
+        target.delete(MEMBER_A);
+        target.delete(MEMBER_B);
+    }
+
+    @Test
+    void coalescedIntoOneBatchBeforeCommit() {
+        txTemplate.executeWithoutResult(status -> {
+            repository.findById(MEMBER_A);
+            repository.update(MEMBER_A, 1000);
+            repository.update(MEMBER_A, 2000);
+            repository.update(MEMBER_A, 3000);
+            // 조회하지 않은 회원
+            repository.update(MEMBER_B, 5000);
+
+            assertThat(flushed).isEmpty();
+        });
+
+        assertThat(flushed).hasSize(1);
+        assertThat(flushed.get(0)).containsExactlyInAnyOrder(MEMBER_A, MEMBER_B);
+        assertThat(target.findById(MEMBER_A).getMoney()).isEqualTo(3000);
+        assertThat(target.findById(MEMBER_B).getMoney()).isEqualTo(5000);
+    }
+
+    @Test
+    void unchangedNotSent() {
+        txTemplate.executeWithoutResult(status -> {
+            Member member = repository.findById(MEMBER_A);
+            repository.update(MEMBER_A, member.getMoney());
+        });
+
+        assertThat(flushed).isEmpty();
+    }
+
+    @Test
+    void nothingSentOnRollback() {
+        txTemplate.executeWithoutResult(status -> {
+            repository.findById(MEMBER_A);
+            repository.update(MEMBER_A, 1000);
+            repository.update(MEMBER_B, 5000);
+            status.setRollbackOnly();
+        });
+
+        assertThat(flushed).isEmpty();
+        assertThat(target.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+        assertThat(target.findById(MEMBER_B).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    void flushFailureThrowsRowException() {
+        assertThatThrownBy(() -> txTemplate.executeWithoutResult(status -> {
+            repository.update(MEMBER_A, 1000);
+            repository.update("missing", 5000);
+        })).isInstanceOf(NoSuchElementException.class);
+
+        // 커밋 전에 실패했으므로 롤백된다.
+        assertThat(target.findById(MEMBER_A).getMoney()).isEqualTo(10000);
+    }
+
+    @Test
+    void pendingUpdateAppliedToLoadedMember() {
+        txTemplate.executeWithoutResult(status -> {
+            repository.update(MEMBER_B, 5000);
+
+            Member member = repository.findById(MEMBER_B);
+            assertThat(member.getMoney()).isEqualTo(5000);
+            assertThat(member.getVersion()).isZero();
+
+            // 없는 회원은 target의 조회 결과(예외)를 그대로 받는다.
+            repository.update("missing", 1);
+            assertThatThrownBy(() -> repository.findById("missing"))
+                    .isInstanceOf(EmptyResultDataAccessException.class);
+            status.setRollbackOnly();
+        });
+    }
+
+    @Test
+    void requiresNewFlushesOnItsOwnCommit() {
+        TransactionTemplate requiresNew = new TransactionTemplate(transactionManager);
+        requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        txTemplate.executeWithoutResult(status -> {
+            repository.update(MEMBER_B, 5000);
+
+            // 안쪽 트랜잭션의 변경은 안쪽 커밋 직전에 보낸다.
+            requiresNew.executeWithoutResult(innerStatus -> repository.update(MEMBER_A, 3000));
+            assertThat(flushed).containsExactly(List.of(MEMBER_A));
+
+            status.setRollbackOnly();
+        });
+
+        // 바깥 트랜잭션이 롤백되어도 안쪽에서 커밋한 변경은 남는다.
+        assertThat(flushed).hasSize(1);
+        assertThat(target.findById(MEMBER_A).getMoney()).isEqualTo(3000);
+        assertThat(target.findById(MEMBER_B).getMoney()).isEqualTo(10000);
+    }
+}
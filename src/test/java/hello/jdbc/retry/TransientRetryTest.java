@@ -0,0 +1,104 @@
+package hello.jdbc.retry;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @RetryOnTransientFailure - 트랜잭션 바깥에서 재시도하는지 확인
+ */
+@Slf4j
+@SpringBootTest
+class TransientRetryTest {
+
+    @Autowired private FlakyService flakyService;
+    @Autowired private TransientRetryInterceptor interceptor;
+
+    @TestConfiguration
+    @Import(TransientRetryConfig.class)
+    static class testConfig {
+
+        @Bean
+        FlakyService flakyService() {
+            return new FlakyService();
+        }
+    }
+
+    @BeforeEach
+    void before() {
+        flakyService.transactionNames.clear();
+        flakyService.transactionActive.clear();
+    }
+
+    @Test
+    void retryTransient() {
+        RetryMetrics metrics = interceptor.getMetrics("FlakyService.run");
+        long retriesBefore = metrics == null ? 0 : metrics.getRetries();
+        long recoveredBefore = metrics == null ? 0 : metrics.getRecovered();
+        flakyService.failures = 2;
+
+        flakyService.run(new CannotAcquireLockException("lock timeout"));
+
+        assertThat(AopUtils.isAopProxy(flakyService)).isTrue();
+        assertThat(flakyService.transactionNames).hasSize(3);
+        // 매번 새 트랜잭션에서 실행된다.
+        assertThat(flakyService.transactionActive).containsOnly(true);
+
+        metrics = interceptor.getMetrics("FlakyService.run");
+        log.info("metrics = {}", metrics);
+        assertThat(metrics.getRetries()).isEqualTo(retriesBefore + 2);
+        assertThat(metrics.getRecovered()).isEqualTo(recoveredBefore + 1);
+    }
+
+    @Test
+    void noRetryDuplicateKey() {
+        flakyService.failures = 1;
+
+        assertThatThrownBy(() -> flakyService.run(new DuplicateKeyException("duplicate")))
+                .isInstanceOf(DuplicateKeyException.class);
+        assertThat(flakyService.transactionNames).hasSize(1);
+    }
+
+    @Test
+    void exhausted() {
+        flakyService.failures = 10;
+
+        assertThatThrownBy(() -> flakyService.run(new CannotAcquireLockException("lock timeout")))
+                .isInstanceOf(CannotAcquireLockException.class);
+        assertThat(flakyService.transactionNames).hasSize(3);
+    }
+
+
+    static class FlakyService {
+
+        int failures;
+        final List<String> transactionNames = new ArrayList<>();
+        final List<Boolean> transactionActive = new ArrayList<>();
+
+        @RetryOnTransientFailure(initialBackoffMillis = 1, maxBackoffMillis = 5)
+        @Transactional
+        public void run(RuntimeException failure) {
+            transactionNames.add(String.valueOf(TransactionSynchronizationManager.getCurrentTransactionName()));
+            transactionActive.add(TransactionSynchronizationManager.isActualTransactionActive());
+            if (failures-- > 0) {
+                throw failure;
+            }
+        }
+    }
+}
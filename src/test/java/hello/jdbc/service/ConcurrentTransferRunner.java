@@ -0,0 +1,62 @@
+package hello.jdbc.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * 동시 이체 테스트 공통 실행기
+ *
+ * threads 개의 스레드가 각각 transfersPerThread 번 이체한다.
+ * 이체할 회원은 route가 스레드 번호를 보고 고르고, 이체는 task가 실행한다.
+ * 실패(락 타임아웃, 교착 상태 등) 건수를 반환하고 처리량을 로그로 남긴다.
+ */
+@Slf4j
+final class ConcurrentTransferRunner {
+
+    private ConcurrentTransferRunner() {
+    }
+
+    static int run(String name, int threads, int transfersPerThread,
+                   IntFunction<Transfer> route, Consumer<Transfer> task) throws Exception {
+        ExecutorService clients = Executors.newFixedThreadPool(threads);
+        AtomicInteger failures = new AtomicInteger();
+
+        long start = System.nanoTime();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            futures.add(clients.submit(() -> {
+                for (int i = 0; i < transfersPerThread; i++) {
+                    try {
+                        task.accept(route.apply(thread));
+                    } catch (RuntimeException e) {
+                        failures.incrementAndGet();
+                        log.info("transfer failed: {}", e.toString());
+                    }
+                }
+            }));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            clients.shutdown();
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        int total = threads * transfersPerThread;
+        log.info("[{}] threads = {}, transfers = {}, failures = {}, elapsed = {}ms, throughput = {}/s",
+                name, threads, total, failures.get(), elapsedMillis, total * 1000L / Math.max(1, elapsedMillis));
+        return failures.get();
+    }
+}
@@ -0,0 +1,106 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 충돌 인식 병렬 일괄 이체
+ */
+@Slf4j
+@SpringBootTest
+class ConflictAwareTransferExecutorTest {
+
+    static final int PAIRS = 8;
+    static final int TRANSFERS_PER_PAIR = 50;
+
+    @Autowired private MemberRepository memberRepository;
+    @Autowired private MemberServiceV4 memberService;
+
+    @TestConfiguration
+    static class testConfig {
+
+        private final DataSource dataSource;
+
+        public testConfig(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        @Bean
+        MemberRepository memberRepository() {
+            return new MemberRepositoryV5(dataSource);
+        }
+
+        @Bean
+        MemberServiceV4 memberServiceV4() {
+            return new MemberServiceV4(memberRepository());
+        }
+    }
+
+    @AfterEach
+    void after() {
+        for (int i = 0; i < PAIRS; i++) {
+            memberRepository.delete("from" + i);
+            memberRepository.delete("to" + i);
+        }
+        memberRepository.delete("ex");
+    }
+
+    @Test
+    void partition() {
+        List<Transfer> transfers = List.of(
+                new Transfer("A", "B", 1),
+                new Transfer("C", "D", 1),
+                new Transfer("B", "E", 1),
+                new Transfer("D", "C", 1));
+
+        assertThat(ConflictAwareTransferExecutor.partition(transfers))
+                .containsExactly(List.of(0, 2), List.of(1, 3));
+    }
+
+    @DisplayName("겹치지 않는 그룹을 병렬로 실행")
+    @Test
+    void execute() {
+        List<Transfer> transfers = new ArrayList<>();
+        for (int i = 0; i < PAIRS; i++) {
+            memberRepository.save(new Member("from" + i, 10000));
+            memberRepository.save(new Member("to" + i, 10000));
+        }
+        memberRepository.save(new Member("ex", 10000));
+        for (int n = 0; n < TRANSFERS_PER_PAIR; n++) {
+            for (int i = 0; i < PAIRS; i++) {
+                transfers.add(new Transfer("from" + i, "to" + i, 10));
+            }
+        }
+        transfers.add(new Transfer("from0", "ex", 10));
+
+        List<TransferResult> results;
+        long start = System.nanoTime();
+        try (ConflictAwareTransferExecutor executor = new ConflictAwareTransferExecutor(memberService, 4)) {
+            results = executor.execute(transfers);
+        }
+        log.info("transfers = {}, elapsed = {}ms", transfers.size(), (System.nanoTime() - start) / 1_000_000);
+
+        assertThat(results).hasSize(transfers.size());
+        assertThat(results.get(results.size() - 1).isSuccess()).isFalse();
+        assertThat(results.subList(0, results.size() - 1)).allMatch(TransferResult::isSuccess);
+        for (int i = 0; i < PAIRS; i++) {
+            assertThat(memberRepository.findById("from" + i).getMoney()).isEqualTo(10000 - 10 * TRANSFERS_PER_PAIR);
+            assertThat(memberRepository.findById("to" + i).getMoney()).isEqualTo(10000 + 10 * TRANSFERS_PER_PAIR);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 그룹 커밋
+ */
+@Slf4j
+@SpringBootTest
+class GroupCommitTransferPipelineTest {
+
+    public static final String MEMBER_A = "memberA";
+    public static final String MEMBER_B = "memberB";
+    public static final String MEMBER_EX = "ex";
+    public static final String MEMBER_LATE_EX = "lateEx";
+    public static final String MEMBER_ERROR = "error";
+
+    @Autowired private MemberRepository memberRepository;
+    @Autowired private PlatformTransactionManager transactionManager;
+    @Autowired private DataSource dataSource;
+
+    private GroupCommitTransferPipeline pipeline;
+
+    @TestConfiguration
+    static class testConfig {
+
+        private final DataSource dataSource;
+
+        public testConfig(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        /**
+         * lateEx로 보내는 이체는 출금을 반영한 뒤에 실패한다.
+         * error로 보내는 이체는 Error를 던져 쓰기 스레드를 끝낸다.
+         */
+        @Bean
+        MemberRepository memberRepository() {
+            return new MemberRepositoryV5(dataSource) {
+                @Override
+                public void transfer(String fromId, String toId, int money) {
+                    if (toId.equals(MEMBER_ERROR)) {
+                        throw new Error("쓰기 스레드 종료");
+                    }
+                    if (toId.equals(MEMBER_LATE_EX)) {
+                        addMoney(fromId, -money);
+                        throw new IllegalStateException("입금 전 예외 발생");
+                    }
+                    super.transfer(fromId, toId, money);
+                }
+            };
+        }
+    }
+
+    @BeforeEach
+    void before() {
+        pipeline = new GroupCommitTransferPipeline(memberRepository, transactionManager, 1000, 100, 1, 64, 50);
+        memberRepository.save(new Member(MEMBER_A, 100_000));
+        memberRepository.save(new Member(MEMBER_B, 100_000));
+        memberRepository.save(new Member(MEMBER_EX, 100_000));
+    }
+
+    @AfterEach
+    void after() {
+        pipeline.close();
+        memberRepository.delete(MEMBER_A);
+        memberRepository.delete(MEMBER_B);
+        memberRepository.delete(MEMBER_EX);
+    }
+
+    @DisplayName("실패한 이체만 롤백되고 나머지는 커밋")
+    @Test
+    void savepointPerTransfer() throws Exception {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            futures.add(pipeline.submit(MEMBER_A, MEMBER_B, 10));
+        }
+        CompletableFuture<Void> fail = pipeline.submit(MEMBER_A, MEMBER_EX, 10);
+        CompletableFuture<Void> failAfterWrite = pipeline.submit(MEMBER_A, MEMBER_LATE_EX, 10);
+        futures.add(pipeline.submit(MEMBER_B, MEMBER_A, 10));
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+        assertThatThrownBy(() -> fail.get(10, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(IllegalStateException.class);
+        // 출금을 반영한 뒤에 실패한 이체도 savepoint로 그 출금까지 롤백된다.
+        assertThatThrownBy(() -> failAfterWrite.get(10, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(IllegalStateException.class);
+
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(95_010);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(104_990);
+        assertThat(memberRepository.findById(MEMBER_EX).getMoney()).isEqualTo(100_000);
+        log.info("group size = {}", pipeline.getGroupSize());
+        assertThat(pipeline.getGroupSize()).isBetween(1, 64);
+    }
+
+    @DisplayName("close와 동시에 들어온 이체도 커밋되거나 거절된다")
+    @Test
+    void closeCompletesEveryAcceptedTransfer() throws Exception {
+        List<CompletableFuture<Void>> futures = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger rejected = new AtomicInteger();
+        Thread submitter = new Thread(() -> {
+            for (int i = 0; i < 1000; i++) {
+                try {
+                    futures.add(pipeline.submit(MEMBER_A, MEMBER_B, 1));
+                } catch (RejectedExecutionException e) {
+                    rejected.incrementAndGet();
+                }
+            }
+        });
+        submitter.start();
+        Thread.sleep(5);
+        pipeline.close();
+        submitter.join();
+
+        int committed = 0;
+        for (CompletableFuture<Void> future : futures) {
+            assertThat(future).isDone();
+            if (future.isCompletedExceptionally()) {
+                assertThatThrownBy(future::get).hasCauseInstanceOf(RejectedExecutionException.class);
+                rejected.incrementAndGet();
+            } else {
+                committed++;
+            }
+        }
+        log.info("committed = {}, rejected = {}", committed, rejected.get());
+        assertThat(committed + rejected.get()).isEqualTo(1000);
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(100_000 - committed);
+    }
+
+    @DisplayName("쓰기 스레드가 Error로 끝나도 모든 이체가 완료된다")
+    @Test
+    void writerErrorCompletesEveryTransfer() throws Exception {
+        CompletableFuture<Void> fatal = pipeline.submit(MEMBER_A, MEMBER_ERROR, 10);
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            try {
+                futures.add(pipeline.submit(MEMBER_A, MEMBER_B, 10));
+            } catch (RejectedExecutionException e) {
+                // 쓰기 스레드가 이미 끝났으면 submit이 거절된다.
+            }
+        }
+
+        assertThatThrownBy(() -> fatal.get(10, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(Error.class);
+        // 같은 그룹이었으면 Error로, 큐에 남아 있었으면 RejectedExecutionException으로 완료된다.
+        for (CompletableFuture<Void> future : futures) {
+            assertThatThrownBy(() -> future.get(10, TimeUnit.SECONDS))
+                    .isInstanceOf(ExecutionException.class);
+        }
+        assertThatThrownBy(() -> pipeline.submit(MEMBER_A, MEMBER_B, 10))
+                .isInstanceOf(RejectedExecutionException.class);
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(100_000);
+    }
+
+    @DisplayName("트랜잭션을 시작하지 못해도 그룹의 이체가 모두 완료된다")
+    @Test
+    void beginFailureCompletesGroup() throws Exception {
+        PlatformTransactionManager failing = new DataSourceTransactionManager(dataSource) {
+            @Override
+            protected void doBegin(Object transaction, TransactionDefinition definition) {
+                throw new CannotCreateTransactionException("begin failed");
+            }
+        };
+
+        try (GroupCommitTransferPipeline failingPipeline =
+                     new GroupCommitTransferPipeline(memberRepository, failing, 1000, 100, 1, 64, 50)) {
+            CompletableFuture<Void> future = failingPipeline.submit(MEMBER_A, MEMBER_B, 10);
+
+            assertThatThrownBy(() -> future.get(10, TimeUnit.SECONDS))
+                    .hasCauseInstanceOf(CannotCreateTransactionException.class);
+        }
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(100_000);
+    }
+}
@@ -0,0 +1,120 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import hello.jdbc.retry.RetryMetrics;
+import hello.jdbc.retry.TransientRetryConfig;
+import hello.jdbc.retry.TransientRetryInterceptor;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+
+import javax.sql.DataSource;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 동시 이체 - 락 순서 고정
+ */
+@Slf4j
+@SpringBootTest
+class MemberServiceV4ConcurrencyTest {
+
+    public static final String MEMBER_A = "memberA";
+    public static final String MEMBER_B = "memberB";
+
+    static final int THREADS = 8;
+    static final int TRANSFERS_PER_THREAD = 200;
+
+    @Autowired private MemberRepository memberRepository;
+    @Autowired private MemberServiceV4 memberService;
+    @Autowired private TransientRetryInterceptor retryInterceptor;
+
+    @TestConfiguration
+    @Import(TransientRetryConfig.class)
+    static class testConfig {
+
+        private final DataSource dataSource;
+
+        public testConfig(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        @Bean
+        MemberRepository memberRepository() {
+            return new MemberRepositoryV5(dataSource);
+        }
+
+        @Bean
+        MemberServiceV4 memberServiceV4() {
+            return new MemberServiceV4(memberRepository());
+        }
+    }
+
+    @BeforeEach
+    void before() {
+        memberRepository.save(new Member(MEMBER_A, 1_000_000));
+        memberRepository.save(new Member(MEMBER_B, 1_000_000));
+    }
+
+    @AfterEach
+    void after() {
+        memberRepository.delete(MEMBER_A);
+        memberRepository.delete(MEMBER_B);
+    }
+
+    @DisplayName("A->B, B->A 동시 이체 - 락 순서 고정")
+    @Test
+    void orderedLocking() throws Exception {
+        int failures = run("ordered", t -> memberService.accountTransferOrdered(t.getFromId(), t.getToId(), t.getMoney()));
+
+        assertThat(failures).isZero();
+        assertTotal();
+    }
+
+    @DisplayName("A->B, B->A 동시 이체 - 낙관적 락 + 재시도 (예산 제한)")
+    @Test
+    void optimisticRetry() throws Exception {
+        int failures = run("optimistic", t -> memberService.accountTransferOptimistic(t.getFromId(), t.getToId(), t.getMoney()));
+
+        RetryMetrics metrics = retryInterceptor.getMetrics("MemberServiceV4.accountTransferOptimistic");
+        log.info("optimistic retry metrics = {}", metrics);
+        assertThat(metrics.getCalls()).isEqualTo(THREADS * TRANSFERS_PER_THREAD);
+        // 실패는 maxAttempts나 재시도 예산을 다 쓴 호출뿐이다.
+        assertThat(failures).isEqualTo(metrics.getExhausted() + metrics.getBudgetRejected());
+        assertTotal();
+    }
+
+    @DisplayName("A->B, B->A 동시 이체 - update 한 번 (교착 상태 없음)")
+    @Test
+    void currentPath() throws Exception {
+        // accountTransfer는 update 한 문장으로 두 행을 잠그므로 락 순서를 고정하지 않아도 실패하지 않는다.
+        int failures = run("current", t -> memberService.accountTransfer(t.getFromId(), t.getToId(), t.getMoney()));
+
+        assertThat(failures).isZero();
+        assertTotal();
+    }
+
+    private void assertTotal() {
+        int total = memberRepository.findById(MEMBER_A).getMoney() + memberRepository.findById(MEMBER_B).getMoney();
+        assertThat(total).isEqualTo(2_000_000);
+    }
+
+    /**
+     * 짝수 스레드는 A -> B, 홀수 스레드는 B -> A
+     */
+    private int run(String name, Consumer<Transfer> task) throws Exception {
+        return ConcurrentTransferRunner.run(name, THREADS, TRANSFERS_PER_THREAD,
+                thread -> thread % 2 == 0 ? new Transfer(MEMBER_A, MEMBER_B, 1) : new Transfer(MEMBER_B, MEMBER_A, 1),
+                task);
+    }
+}
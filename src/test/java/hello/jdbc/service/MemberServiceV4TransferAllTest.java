@@ -0,0 +1,116 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 일괄 이체 - 이체마다 savepoint
+ */
+@SpringBootTest
+class MemberServiceV4TransferAllTest {
+
+    public static final String MEMBER_A = "memberA";
+    public static final String MEMBER_B = "memberB";
+    public static final String MEMBER_EX = "ex";
+    public static final String MEMBER_LATE_EX = "lateEx";
+
+    @Autowired private MemberRepository memberRepository;
+    @Autowired private MemberServiceV4 memberService;
+
+    @TestConfiguration
+    static class testConfig {
+
+        private final DataSource dataSource;
+
+        public testConfig(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        /**
+         * lateEx로 보내는 이체는 출금을 반영한 뒤에 실패한다.
+         */
+        @Bean
+        MemberRepository memberRepository() {
+            return new MemberRepositoryV5(dataSource) {
+                @Override
+                public void transfer(String fromId, String toId, int money) {
+                    if (toId.equals(MEMBER_LATE_EX)) {
+                        addMoney(fromId, -money);
+                        throw new IllegalStateException("입금 전 예외 발생");
+                    }
+                    super.transfer(fromId, toId, money);
+                }
+            };
+        }
+
+        @Bean
+        MemberServiceV4 memberServiceV4() {
+            return new MemberServiceV4(memberRepository());
+        }
+    }
+
+    @AfterEach
+    void after() {
+        memberRepository.delete(MEMBER_A);
+        memberRepository.delete(MEMBER_B);
+        memberRepository.delete(MEMBER_EX);
+    }
+
+    @DisplayName("일괄 이체 - 실패한 이체만 롤백")
+    @Test
+    void transferAll() {
+        // given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+        memberRepository.save(new Member(MEMBER_EX, 10000));
+
+        // when
+        List<TransferResult> results = memberService.transferAll(List.of(
+                new Transfer(MEMBER_A, MEMBER_B, 1000),
+                new Transfer(MEMBER_A, MEMBER_EX, 1000),
+                new Transfer(MEMBER_B, MEMBER_A, 500)));
+
+        // then
+        assertThat(results).extracting(TransferResult::isSuccess).containsExactly(true, false, true);
+        assertThat(results.get(1).getException()).isInstanceOf(IllegalStateException.class);
+
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(9500);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(10500);
+        assertThat(memberRepository.findById(MEMBER_EX).getMoney()).isEqualTo(10000);
+    }
+
+    @DisplayName("일괄 이체 - 변경 후 실패한 이체는 savepoint까지 롤백")
+    @Test
+    void transferAllRollsBackPartialWrite() {
+        // given
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+
+        // when
+        List<TransferResult> results = memberService.transferAll(List.of(
+                new Transfer(MEMBER_A, MEMBER_B, 1000),
+                new Transfer(MEMBER_A, MEMBER_LATE_EX, 1000),
+                new Transfer(MEMBER_B, MEMBER_A, 500)));
+
+        // then
+        assertThat(results).extracting(TransferResult::isSuccess).containsExactly(true, false, true);
+        assertThat(results.get(1).getException()).isInstanceOf(IllegalStateException.class);
+
+        // 두 번째 이체의 출금(-1000)은 롤백되고 앞뒤 이체는 커밋된다.
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(9500);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(10500);
+    }
+}
@@ -0,0 +1,155 @@
+package hello.jdbc.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 계정 파티션 단일 writer 이체 - 락 방식과 비교
+ */
+@Slf4j
+@SpringBootTest
+class PartitionedTransferExecutorTest {
+
+    static final int PARTITIONS = 4;
+    static final int MEMBERS = 16;
+    static final int TRANSFERS = 1600;
+    static final int INITIAL_MONEY = 1_000_000;
+
+    @Autowired private MemberRepository memberRepository;
+    @Autowired private MemberServiceV4 memberService;
+    @Autowired private DataSource dataSource;
+    @Autowired private PlatformTransactionManager transactionManager;
+
+    private PartitionedTransferExecutor executor;
+
+    @TestConfiguration
+    static class testConfig {
+
+        private final DataSource dataSource;
+
+        public testConfig(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        @Bean
+        MemberRepository memberRepository() {
+            return new MemberRepositoryV5(dataSource);
+        }
+
+        @Bean
+        MemberServiceV4 memberServiceV4() {
+            return new MemberServiceV4(memberRepository());
+        }
+    }
+
+    @BeforeEach
+    void before() {
+        executor = new PartitionedTransferExecutor(memberRepository, dataSource, transactionManager, PARTITIONS);
+        for (int i = 0; i < MEMBERS; i++) {
+            memberRepository.save(new Member("member" + i, INITIAL_MONEY));
+        }
+    }
+
+    @AfterEach
+    void after() {
+        executor.close();
+        for (int i = 0; i < MEMBERS; i++) {
+            memberRepository.delete("member" + i);
+        }
+    }
+
+    @DisplayName("다른 파티션으로 입금이 실패하면 출금을 되돌린다")
+    @Test
+    void compensate() {
+        String fromId = "member0";
+        String missingId = "missing0";
+        for (int i = 1; executor.partitionOf(missingId) == executor.partitionOf(fromId); i++) {
+            missingId = "missing" + i;
+        }
+        String toId = missingId;
+
+        assertThatThrownBy(() -> executor.accountTransfer(fromId, toId, 1000))
+                .isInstanceOf(NoSuchElementException.class);
+        assertThat(memberRepository.findById(fromId).getMoney()).isEqualTo(INITIAL_MONEY);
+    }
+
+    @DisplayName("파티션 커넥션을 얻지 못하면 앞에서 시작한 파티션의 커넥션을 돌려준다")
+    @Test
+    void bindFailureReleasesStartedPartitions() {
+        HikariPoolMXBean pool = ((HikariDataSource) dataSource).getHikariPoolMXBean();
+        int active = pool.getActiveConnections();
+        AtomicInteger obtained = new AtomicInteger();
+        DataSource failing = new DelegatingDataSource(dataSource) {
+            @Override
+            public Connection getConnection() throws SQLException {
+                if (obtained.incrementAndGet() > 2) {
+                    throw new SQLException("세 번째 파티션 커넥션 실패");
+                }
+                return super.getConnection();
+            }
+        };
+
+        assertThatThrownBy(() -> new PartitionedTransferExecutor(memberRepository, failing, transactionManager, PARTITIONS))
+                .isInstanceOf(CannotGetJdbcConnectionException.class);
+        assertThat(pool.getActiveConnections()).isEqualTo(active);
+    }
+
+    @DisplayName("파티션 단일 writer vs 락 순서 고정")
+    @ParameterizedTest
+    @ValueSource(ints = {8, 16, 32})
+    void benchmark(int threads) throws Exception {
+        int partitionedFailures = run("partitioned", threads,
+                t -> executor.accountTransfer(t.getFromId(), t.getToId(), t.getMoney()));
+        int lockedFailures = run("locked", threads,
+                t -> memberService.accountTransferOrdered(t.getFromId(), t.getToId(), t.getMoney()));
+
+        assertThat(partitionedFailures).isZero();
+        log.info("locked failures = {}", lockedFailures);
+        assertTotal();
+    }
+
+    private void assertTotal() {
+        long total = 0;
+        for (int i = 0; i < MEMBERS; i++) {
+            total += memberRepository.findById("member" + i).getMoney();
+        }
+        assertThat(total).isEqualTo((long) MEMBERS * INITIAL_MONEY);
+    }
+
+    private int run(String name, int threads, Consumer<Transfer> task) throws Exception {
+        return ConcurrentTransferRunner.run(name, threads, TRANSFERS / threads, thread -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int from = random.nextInt(MEMBERS);
+            int to = (from + 1 + random.nextInt(MEMBERS - 1)) % MEMBERS;
+            return new Transfer("member" + from, "member" + to, 1);
+        }, task);
+    }
+}
@@ -0,0 +1,149 @@
+package hello.jdbc.service;
+
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import hello.jdbc.repository.ex.InsufficientMoneyException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 이체 상계
+ */
+@SpringBootTest
+class TransferNettingEngineTest {
+
+    public static final String MEMBER_A = "memberA";
+    public static final String MEMBER_B = "memberB";
+    public static final String MEMBER_EX = "ex";
+
+    @Autowired private MemberRepository memberRepository;
+    @Autowired private PlatformTransactionManager transactionManager;
+    @Autowired private DataSource dataSource;
+
+    private TransferNettingEngine engine;
+
+    @TestConfiguration
+    static class testConfig {
+
+        private final DataSource dataSource;
+
+        public testConfig(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        @Bean
+        MemberRepository memberRepository() {
+            return new MemberRepositoryV5(dataSource);
+        }
+    }
+
+    @BeforeEach
+    void before() {
+        engine = new TransferNettingEngine(memberRepository, transactionManager, 100, 50);
+    }
+
+    @AfterEach
+    void after() {
+        engine.close();
+        memberRepository.delete(MEMBER_A);
+        memberRepository.delete(MEMBER_B);
+        memberRepository.delete(MEMBER_EX);
+    }
+
+    @DisplayName("양방향 이체는 순변동만 반영")
+    @Test
+    void netting() throws Exception {
+        memberRepository.save(new Member(MEMBER_A, 10000));
+        memberRepository.save(new Member(MEMBER_B, 10000));
+
+        CompletableFuture<Void> ab = engine.submit(MEMBER_A, MEMBER_B, 3000);
+        CompletableFuture<Void> ba = engine.submit(MEMBER_B, MEMBER_A, 1000);
+        CompletableFuture.allOf(ab, ba).get(5, TimeUnit.SECONDS);
+
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(8000);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(12000);
+        // 회원당 update 한 번
+        assertThat(memberRepository.findById(MEMBER_A).getVersion()).isEqualTo(1);
+    }
+
+    @DisplayName("잔액이 음수가 되는 이체만 실패")
+    @Test
+    void insufficient() throws Exception {
+        memberRepository.save(new Member(MEMBER_A, 1000));
+        memberRepository.save(new Member(MEMBER_B, 0));
+
+        CompletableFuture<Void> ok = engine.submit(MEMBER_A, MEMBER_B, 800);
+        CompletableFuture<Void> fail = engine.submit(MEMBER_A, MEMBER_B, 800);
+        ok.get(5, TimeUnit.SECONDS);
+
+        assertThatThrownBy(() -> fail.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(InsufficientMoneyException.class);
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(200);
+        assertThat(memberRepository.findById(MEMBER_B).getMoney()).isEqualTo(800);
+    }
+
+    @DisplayName("이체중 예외 - 바로 실패")
+    @Test
+    void ex() {
+        memberRepository.save(new Member(MEMBER_A, 1000));
+        memberRepository.save(new Member(MEMBER_EX, 1000));
+
+        CompletableFuture<Void> future = engine.submit(MEMBER_A, MEMBER_EX, 500);
+
+        assertThatThrownBy(() -> future.get(5, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(IllegalStateException.class);
+        assertThat(memberRepository.findById(MEMBER_A).getMoney()).isEqualTo(1000);
+    }
+
+    @DisplayName("적용해 보기 전에 실패해도 묶음의 이체가 모두 완료된다")
+    @Test
+    void failureBeforeApply() {
+        MemberRepository failing = new MemberRepositoryV5(dataSource) {
+            @Override
+            public Map<String, Member> findAllById(Collection<String> memberIds) {
+                throw new DataAccessResourceFailureException("findAllById failed");
+            }
+        };
+
+        try (TransferNettingEngine failingEngine = new TransferNettingEngine(failing, transactionManager, 100, 50)) {
+            CompletableFuture<Void> first = failingEngine.submit(MEMBER_A, MEMBER_B, 100);
+            CompletableFuture<Void> second = failingEngine.submit(MEMBER_B, MEMBER_A, 100);
+
+            assertThatThrownBy(() -> first.get(5, TimeUnit.SECONDS))
+                    .hasCauseInstanceOf(DataAccessResourceFailureException.class);
+            assertThatThrownBy(() -> second.get(5, TimeUnit.SECONDS))
+                    .hasCauseInstanceOf(DataAccessResourceFailureException.class);
+        }
+    }
+
+    @DisplayName("close 이후 submit - 실패한 future")
+    @Test
+    void submitAfterClose() {
+        engine.close();
+
+        CompletableFuture<Void> future = engine.submit(MEMBER_A, MEMBER_B, 100);
+
+        assertThat(future).isCompletedExceptionally();
+        assertThatThrownBy(future::join).hasCauseInstanceOf(IllegalStateException.class);
+    }
+}
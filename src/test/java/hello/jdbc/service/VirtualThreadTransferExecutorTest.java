@@ -0,0 +1,193 @@
+package hello.jdbc.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import hello.jdbc.domain.Member;
+import hello.jdbc.repository.MemberRepository;
+import hello.jdbc.repository.MemberRepositoryV5;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+
+import javax.sql.DataSource;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 가상 스레드 이체 - 동시 요청 수 >> 플랫폼 스레드 수
+ */
+@Slf4j
+@SpringBootTest
+class VirtualThreadTransferExecutorTest {
+
+    static final int MEMBERS = 16;
+    static final int REQUESTS = 10_000;
+    static final int INITIAL_MONEY = 1_000_000;
+
+    @Autowired private MemberRepository memberRepository;
+    @Autowired private MemberServiceV4 memberService;
+    @Autowired private HikariDataSource dataSource;
+
+    @TestConfiguration
+    static class testConfig {
+
+        private final DataSource dataSource;
+
+        public testConfig(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        @Bean
+        MemberRepository memberRepository() {
+            return new MemberRepositoryV5(dataSource);
+        }
+
+        @Bean
+        MemberServiceV4 memberServiceV4() {
+            return new MemberServiceV4(memberRepository());
+        }
+    }
+
+    @BeforeEach
+    void before() {
+        for (int i = 0; i < MEMBERS; i++) {
+            memberRepository.save(new Member("member" + i, INITIAL_MONEY));
+        }
+    }
+
+    @AfterEach
+    void after() {
+        for (int i = 0; i < MEMBERS; i++) {
+            memberRepository.delete("member" + i);
+        }
+    }
+
+    @DisplayName("요청 만 건을 동시에 - min(커넥션 풀 크기, 코어 수)만큼만 실행")
+    @Test
+    void benchmark() {
+        int platformThreadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+        long heapBefore = usedHeap();
+
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        MemberServiceV4 countingService = new MemberServiceV4(memberRepository) {
+            @Override
+            public void accountTransfer(String fromId, String toId, int money) {
+                peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    memberService.accountTransfer(fromId, toId, money);
+                } finally {
+                    running.decrementAndGet();
+                }
+            }
+        };
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>(REQUESTS);
+        long start = System.nanoTime();
+        int maxWaiting = 0;
+        int maxConcurrency;
+        try (VirtualThreadTransferExecutor executor = new VirtualThreadTransferExecutor(countingService, dataSource)) {
+            maxConcurrency = executor.getMaxConcurrency();
+            for (int i = 0; i < REQUESTS; i++) {
+                int from = i % MEMBERS;
+                futures.add(executor.submit("member" + from, "member" + ((from + 1) % MEMBERS), 1));
+                maxWaiting = Math.max(maxWaiting, executor.getWaitingCount());
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        int platformThreadsAfter = ManagementFactory.getThreadMXBean().getThreadCount();
+        log.info("requests = {}, permits = {}, peak = {}, max waiting = {}, platform threads {} -> {}, heap delta = {}KB, elapsed = {}ms, throughput = {}/s",
+                REQUESTS, maxConcurrency, peak.get(), maxWaiting, platformThreadsBefore, platformThreadsAfter,
+                (usedHeap() - heapBefore) / 1024, elapsedMillis, REQUESTS * 1000L / Math.max(1, elapsedMillis));
+
+        // 드라이버에서 캐리어를 붙잡는 가상 스레드가 캐리어 수를 넘지 않도록 permits를 제한한다.
+        assertThat(maxConcurrency).isEqualTo(
+                Math.min(dataSource.getMaximumPoolSize(), Runtime.getRuntime().availableProcessors()));
+        assertThat(peak.get()).isBetween(1, maxConcurrency);
+        assertThat(platformThreadsAfter).isLessThan(REQUESTS / 10);
+
+        long total = 0;
+        for (int i = 0; i < MEMBERS; i++) {
+            total += memberRepository.findById("member" + i).getMoney();
+        }
+        assertThat(total).isEqualTo((long) MEMBERS * INITIAL_MONEY);
+    }
+
+    @DisplayName("permit을 모두 잡아 두면 나머지는 세마포어에서 가상 스레드로 기다린다")
+    @Test
+    void waitersAreVirtualThreads() throws Exception {
+        int permits = 4;
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger completed = new AtomicInteger();
+        MemberServiceV4 blockingService = new MemberServiceV4(memberRepository) {
+            @Override
+            public void accountTransfer(String fromId, String toId, int money) {
+                running.incrementAndGet();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(e);
+                }
+                completed.incrementAndGet();
+            }
+        };
+
+        System.gc();
+        long heapBefore = usedHeap();
+        List<CompletableFuture<Void>> futures = new ArrayList<>(REQUESTS);
+        try (VirtualThreadTransferExecutor executor = new VirtualThreadTransferExecutor(blockingService, permits)) {
+            for (int i = 0; i < REQUESTS; i++) {
+                futures.add(executor.submit("member0", "member1", 1));
+            }
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (executor.getWaitingCount() < REQUESTS - permits && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            int platformThreads = ManagementFactory.getThreadMXBean().getThreadCount();
+            long heapDelta = usedHeap() - heapBefore;
+            log.info("waiting = {}, running = {}, platform threads = {}, heap delta = {}KB",
+                    executor.getWaitingCount(), running.get(), platformThreads, heapDelta / 1024);
+
+            assertThat(executor.getWaitingCount()).isEqualTo(REQUESTS - permits);
+            assertThat(running.get()).isEqualTo(permits);
+            // 기다리는 요청마다 플랫폼 스레드를 쓰지 않는다.
+            assertThat(platformThreads).isLessThan(REQUESTS / 10);
+            // 기다리는 요청 하나의 비용이 플랫폼 스레드 스택(기본 1MB)보다 훨씬 작다.
+            assertThat(heapDelta).isLessThan(REQUESTS * 64L * 1024);
+
+            release.countDown();
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+        }
+        assertThat(completed.get()).isEqualTo(REQUESTS);
+    }
+
+    @DisplayName("maxConcurrency는 1 이상")
+    @Test
+    void invalidMaxConcurrency() {
+        assertThatThrownBy(() -> new VirtualThreadTransferExecutor(memberService, 0))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}